@@ -0,0 +1,107 @@
+package pt.isel.poo.puzzle.bench;
+
+import pt.isel.poo.puzzle.anim.Animations;
+import pt.isel.poo.puzzle.anim.Easing;
+
+/**
+ * Checks the positions computed by Animations with a fake clock:
+ * at the start, at half of the duration, at the end, and the removal after completion.</br>
+ * Usage: AnimationsCheck (exits with status 1 if some check fails)
+ */
+public class AnimationsCheck {
+
+	private static final float EPS = 1e-4f;
+	private static int failed;
+
+	public static void main(String[] args) {
+		linear();
+		easeOut();
+		group();
+		continuation();
+		System.out.println(failed==0 ? "OK" : failed+" checks failed");
+		if (failed>0) System.exit(1);
+	}
+
+	// One tile from cell 0 to cell 2 (two columns to the right) in 100 ms
+	private static void linear() {
+		FakeClock clock = new FakeClock();
+		Animations a = new Animations(4, 4, clock);
+		a.setEasing(Easing.LINEAR);
+		a.start(0, 2, 100);
+		check("linear start", a.update()==1 && a.isAnimating(2) && a.getCell(0)==2);
+		position("linear t=0", a, 0, 0, 0);
+		clock.advance(50);
+		check("linear mid", a.update()==1);
+		position("linear t=50", a, 0, 1, 0);
+		clock.advance(49);
+		check("linear before end", a.update()==1);
+		position("linear t=99", a, 0, 1.98f, 0);
+		clock.advance(1);
+		check("linear removed at end", a.update()==0 && !a.isAnimating(2));
+		clock.advance(100);
+		check("linear stays removed", a.update()==0);
+	}
+
+	// One tile from cell 12 to cell 0 (three lines up) with the default easing (t*(2-t))
+	private static void easeOut() {
+		FakeClock clock = new FakeClock();
+		Animations a = new Animations(4, 4, clock);
+		a.start(12, 0, 200);
+		a.update();
+		position("ease t=0", a, 0, 0, 3);
+		clock.advance(100);
+		a.update();
+		position("ease t=100", a, 0, 0, 3-3*0.75f);
+		clock.advance(150);	// Late frame: past the end
+		check("ease removed after end", a.update()==0 && !a.isAnimating(0));
+	}
+
+	// Tiles of a line started in a group move together, and all are removed in the same frame
+	private static void group() {
+		FakeClock clock = new FakeClock();
+		Animations a = new Animations(4, 4, clock);
+		a.setEasing(Easing.LINEAR);
+		a.beginGroup();
+		a.start(1, 0, 100);
+		clock.advance(10);	// Time passing between starts of the group is ignored
+		a.start(2, 1, 100);
+		a.start(3, 2, 100);
+		a.endGroup();
+		clock.advance(40);
+		check("group size", a.update()==3);
+		for(int i=0 ; i<3 ; ++i) {
+			int c = a.getCell(i);
+			position("group cell "+c, a, i, c+1-0.5f, 0);
+		}
+		clock.advance(50);
+		check("group removed together", a.update()==0);
+	}
+
+	// A tile that is still moving continues from its current position to the new cell
+	private static void continuation() {
+		FakeClock clock = new FakeClock();
+		Animations a = new Animations(4, 4, clock);
+		a.setEasing(Easing.LINEAR);
+		a.start(0, 1, 100);
+		clock.advance(50);
+		a.start(1, 2, 100);		// Tile at 0.5 goes to cell 2
+		check("continuation replaces", a.update()==1 && !a.isAnimating(1) && a.isAnimating(2));
+		position("continuation t=0", a, 0, 0.5f, 0);
+		clock.advance(50);
+		a.update();
+		position("continuation t=50", a, 0, 1.25f, 0);
+		clock.advance(50);
+		check("continuation removed", a.update()==0);
+	}
+
+	private static void position(String name, Animations a, int i, float x, float y) {
+		check(name+" ("+a.getX(i)+","+a.getY(i)+") expected ("+x+","+y+")",
+				Math.abs(a.getX(i)-x)<EPS && Math.abs(a.getY(i)-y)<EPS);
+	}
+
+	private static void check(String name, boolean ok) {
+		if (ok) return;
+		System.out.println("FAILED: "+name);
+		++failed;
+	}
+}
@@ -0,0 +1,110 @@
+package pt.isel.poo.puzzle.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import pt.isel.poo.puzzle.model.ArrayBoard;
+import pt.isel.poo.puzzle.model.BitBoard;
+import pt.isel.poo.puzzle.model.Board;
+import pt.isel.poo.puzzle.model.Shuffler;
+import pt.isel.poo.puzzle.model.StateCodec;
+
+/**
+ * Operations of the board model used by the activity:
+ * moves (onDrag, with lines of tiles), shuffle, finish verification and state save/restore.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+
+	@Param({"4", "10"})
+	int size;
+
+	@Param({"array", "bits"})
+	String impl;
+
+	Board board;
+	Shuffler shuffler;
+	StateCodec codec;
+	int[] cells, targets;
+	long rank;
+	byte[] encoded;
+	int next;
+
+	@Setup
+	public void setup() {
+		board = impl.equals("array") || size*size>BitBoard.MAX_CELLS 
+				? new ArrayBoard(size, size, size-1) : new BitBoard(size, size, size-1);
+		shuffler = new Shuffler(new Random(42));
+		shuffler.shuffle(board);
+		cells = new int[board.getSize()];
+		board.getCells(cells);
+		codec = new StateCodec(board.getSize());
+		if (StateCodec.fitsLong(cells.length)) rank = codec.rank(cells);
+		else encoded = codec.encode(cells);
+		// Cells to drag: random cells, many in line with the hole
+		Random rnd = new Random(7);
+		targets = new int[1024];
+		for(int i=0 ; i<targets.length ; ++i) targets[i] = rnd.nextInt(board.getSize());
+	}
+
+	/**
+	 * Slide of a line of tiles to the hole (onDrag semantics)
+	 */
+	@Benchmark
+	public int slide() {
+		int c = targets[next++ & 1023];
+		int n = board.slide(c);
+		if (n==0) n = board.slide(c - c%size + board.getHole()%size); // Same line of the hole
+		return n;
+	}
+
+	@Benchmark
+	public boolean isSolved() {
+		return board.isSolved();
+	}
+
+	@Benchmark
+	public Board shuffle() {
+		shuffler.shuffle(board);
+		return board;
+	}
+
+	/**
+	 * Encoding as in Puzzle.onSaveInstanceState
+	 */
+	@Benchmark
+	public void saveState(Blackhole bh) {
+		board.getCells(cells);
+		if (StateCodec.fitsLong(cells.length)) bh.consume(codec.rank(cells));
+		else bh.consume(codec.encode(cells));
+	}
+
+	/**
+	 * Decoding as in Puzzle.onRestoreInstanceState
+	 */
+	@Benchmark
+	public Board restoreState() {
+		if (StateCodec.fitsLong(cells.length)) codec.unrank(rank, cells);
+		else codec.decode(encoded, cells);
+		board.setCells(cells);
+		return board;
+	}
+}
@@ -0,0 +1,16 @@
+package pt.isel.poo.puzzle.bench;
+
+import pt.isel.poo.puzzle.anim.Clock;
+
+/**
+ * Clock that only advances when told, to run the animations frame by frame outside Android
+ */
+public class FakeClock implements Clock {
+
+	private long time;
+
+	@Override
+	public long now() { return time; }
+
+	public void advance(long ms) { time += ms; }
+}
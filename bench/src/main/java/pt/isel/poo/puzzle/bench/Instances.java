@@ -0,0 +1,58 @@
+package pt.isel.poo.puzzle.bench;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import pt.isel.poo.puzzle.Direction;
+import pt.isel.poo.puzzle.model.Board;
+import pt.isel.poo.puzzle.model.Boards;
+
+/**
+ * Instance sets used by the benchmarks
+ */
+final class Instances {
+
+	private Instances() { }
+
+	/**
+	 * Boards made with seeded random walks from the solved board
+	 */
+	static Board[] randomWalks(int width, int height, int count, int moves, long seed) {
+		Random rnd = new Random(seed);
+		Board[] res = new Board[count];
+		for(int i=0 ; i<count ; ++i) {
+			Board b = Boards.create(width, height, width-1);
+			for(int m=0 ; m<moves ; ) 
+				if (b.moveHole(Direction.of(rnd.nextInt(4)))) ++m;
+			res[i] = b;
+		}
+		return res;
+	}
+
+	/**
+	 * Reads a resource with one 4x4 board per line (the hole home in cell 0)
+	 */
+	static Board[] korf(String resource) throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(Instances.class.getResourceAsStream(resource), "UTF-8"));
+		try {
+			List<Board> res = new ArrayList<Board>();
+			for(String line ; (line = in.readLine())!=null ; ) {
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) continue;
+				String[] vals = line.split("\\s+");
+				int[] cells = new int[vals.length];
+				for(int i=0 ; i<vals.length ; ++i) cells[i] = Integer.parseInt(vals[i]);
+				Board b = Boards.create(4, 4, 0);
+				b.setCells(cells);
+				res.add(b);
+			}
+			return res.toArray(new Board[res.size()]);
+		} finally {
+			in.close();
+		}
+	}
+}
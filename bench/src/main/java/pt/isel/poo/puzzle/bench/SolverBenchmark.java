@@ -0,0 +1,84 @@
+package pt.isel.poo.puzzle.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pt.isel.poo.puzzle.Direction;
+import pt.isel.poo.puzzle.model.Board;
+import pt.isel.poo.puzzle.solver.Heuristic;
+import pt.isel.poo.puzzle.solver.IdaStarSolver;
+import pt.isel.poo.puzzle.solver.LinearConflictHeuristic;
+import pt.isel.poo.puzzle.solver.ManhattanHeuristic;
+import pt.isel.poo.puzzle.solver.PatternDatabaseFile;
+import pt.isel.poo.puzzle.solver.PdbHeuristic;
+import pt.isel.poo.puzzle.solver.TranspositionTable;
+
+/**
+ * Optimal solvers in standard instance sets.
+ * Each operation solves all boards of the set.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class SolverBenchmark {
+
+	Board[] walks3x3, walks4x4, korf;
+	IdaStarSolver lc, manhattan, pdb, pdbTable;
+
+	@Setup
+	public void setup() throws IOException {
+		walks3x3 = Instances.randomWalks(3, 3, 100, 100, 1);
+		walks4x4 = Instances.randomWalks(4, 4, 20, 60, 2);
+		korf = Instances.korf("/korf100-sample.txt");
+		lc = new IdaStarSolver(LinearConflictHeuristic.FACTORY);
+		manhattan = new IdaStarSolver(ManhattanHeuristic.FACTORY);	// In a BitBoard
+		Heuristic.Factory dbs = PdbHeuristic.factory(PatternDatabaseFile.build(4, 4, 0), LinearConflictHeuristic.FACTORY);
+		pdb = new IdaStarSolver(dbs);
+		pdbTable = new IdaStarSolver(dbs);
+		pdbTable.setTranspositionTable(new TranspositionTable(1<<24));
+	}
+
+	private static int solveAll(IdaStarSolver s, Board[] set) {
+		int moves = 0;
+		for(Board b : set) {
+			Direction[] sol = s.solve(b);
+			moves += sol.length;
+		}
+		return moves;
+	}
+
+	@Benchmark
+	public int linearConflict3x3() { return solveAll(lc, walks3x3); }
+
+	@Benchmark
+	public int linearConflict4x4() { return solveAll(lc, walks4x4); }
+
+	@Benchmark
+	public int manhattan3x3() { return solveAll(manhattan, walks3x3); }
+
+	@Benchmark
+	public int manhattan4x4() { return solveAll(manhattan, walks4x4); }
+
+	@Benchmark
+	public int linearConflictKorf() { return solveAll(lc, korf); }
+
+	@Benchmark
+	public int patternDatabaseKorf() { return solveAll(pdb, korf); }
+
+	@Benchmark
+	public int patternDatabaseTableKorf() { return solveAll(pdbTable, korf); }
+}
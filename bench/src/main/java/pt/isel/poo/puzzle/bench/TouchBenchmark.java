@@ -0,0 +1,58 @@
+package pt.isel.poo.puzzle.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pt.isel.poo.puzzle.model.Boards;
+import pt.isel.poo.puzzle.model.GestureReplay;
+import pt.isel.poo.puzzle.model.GridGeometry;
+
+/**
+ * Mapping of touch coordinates to tiles (TilePanel.onTouchEvent)
+ * and replay of a stream of touches against the board (1000 gestures per operation)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TouchBenchmark {
+
+	GridGeometry geo;
+	int[] xs, ys;
+	int next;
+	GestureReplay replay;
+
+	@Setup
+	public void setup() {
+		geo = new GridGeometry(10, 10);
+		geo.resize(1080, 1080);
+		Random rnd = new Random(3);
+		xs = new int[1024]; ys = new int[1024];
+		for(int i=0 ; i<xs.length ; ++i) { xs[i] = rnd.nextInt(1100)-10; ys[i] = rnd.nextInt(1100)-10; }
+		replay = GestureReplay.random(Boards.create(4, 4, 3), 1080, 1080, 1000, 3);
+	}
+
+	@Benchmark
+	public int tileAt() {
+		int i = next++ & 1023;
+		return geo.tileAt(xs[i], ys[i]);
+	}
+
+	@Benchmark
+	public boolean replay() {
+		return replay.run();
+	}
+}
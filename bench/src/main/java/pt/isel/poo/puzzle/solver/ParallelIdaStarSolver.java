@@ -0,0 +1,195 @@
+package pt.isel.poo.puzzle.solver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import pt.isel.poo.puzzle.Direction;
+import pt.isel.poo.puzzle.model.Board;
+import pt.isel.poo.puzzle.model.Boards;
+import pt.isel.poo.puzzle.model.MoveTable;
+
+/**
+ * Optimal solver using IDA* in parallel, with a ForkJoinPool.</br>
+ * In each iteration the search tree is split in tasks until the split depth,
+ * and each subtree below is searched sequentially by the worker thread that runs the task.
+ * The pool balances the tasks between threads (work stealing).
+ * The workers share the cost bound, the minimum cost that exceeded it (next bound)
+ * and a flag to stop all searches when a solution is found.</br>
+ * Only in the JVM build of the bench module (ForkJoinPool requires Android API 21),
+ * the APP uses the sequential IdaStarSolver.
+ * @author Palex
+ * @see IdaStarSolver
+ */
+public class ParallelIdaStarSolver {
+
+	private final Heuristic.Factory factory;
+	private final ForkJoinPool pool;
+	private final int splitDepth;		// Depth of the tree split in tasks
+
+	// State of current solve, shared by all tasks
+	private Board root;
+	private volatile int bound;
+	private final AtomicInteger nextBound = new AtomicInteger();
+	private final AtomicBoolean found = new AtomicBoolean();
+	private final AtomicLong nodes = new AtomicLong();
+	private volatile int[] solution;
+	private ThreadLocal<IdaStarSolver> workers;	// Search state of each thread
+
+	/**
+	 * @param factory heuristic to use
+	 * @param pool pool to run the tasks
+	 * @param splitDepth depth to split the tree in tasks (the number of tasks grows about 3 times by level)
+	 */
+	public ParallelIdaStarSolver(Heuristic.Factory factory, ForkJoinPool pool, int splitDepth) {
+		if (splitDepth<1) throw new IllegalArgumentException("splitDepth");
+		this.factory = factory;
+		this.pool = pool;
+		this.splitDepth = splitDepth;
+	}
+
+	/**
+	 * Uses Manhattan distance with linear conflicts and all processors
+	 */
+	public ParallelIdaStarSolver() {
+		this(LinearConflictHeuristic.FACTORY, new ForkJoinPool(), 6);
+	}
+
+	/**
+	 * @return number of nodes expanded in the last solve
+	 */
+	public long getNodes() { return nodes.get(); }
+
+	/**
+	 * Finds a shortest solution. The board is not changed.
+	 * @return the directions to move the hole (empty if solved)
+	 * @throws IllegalArgumentException If the board has no solution 
+	 */
+	public synchronized Direction[] solve(Board b) {
+		if (!Boards.isSolvable(b)) throw new IllegalArgumentException("Unsolvable board");
+		root = b.copy();
+		workers = new ThreadLocal<IdaStarSolver>() {
+			@Override
+			protected IdaStarSolver initialValue() {
+				IdaStarSolver w = new IdaStarSolver(factory);
+				w.stop = found;
+				return w;
+			}
+		};
+		found.set(false);
+		nodes.set(0);
+		solution = null;
+		IdaStarSolver w = workers.get();
+		w.prepare(root);
+		bound = w.h;
+		while (!found.get()) {
+			nextBound.set(Integer.MAX_VALUE);
+			pool.invoke(new SearchTask(new int[0], -1));
+			bound = nextBound.get();
+		}
+		int[] sol = solution;
+		Direction[] res = new Direction[sol.length];
+		for(int i=0 ; i<sol.length ; ++i) res[i] = IdaStarSolver.DIRS[sol[i]];
+		return res;
+	}
+
+	// Search of the subtree after the prefix moves
+	private class SearchTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int[] prefix;		// Hole moves from the root
+		private final int last;			// Last move of prefix (-1 in root)
+
+		SearchTask(int[] prefix, int last) { this.prefix = prefix; this.last = last; }
+
+		@Override
+		protected void compute() {
+			if (found.get()) return;
+			IdaStarSolver w = workers.get();
+			w.prepare(root);
+			for(int d : prefix) w.move(d);
+			int g = prefix.length;
+			w.bound = bound;
+			if (w.path.length<bound+1) w.path = new int[bound*2+1];
+			if (g<splitDepth) split(w, g);
+			else {
+				System.arraycopy(prefix, 0, w.path, 0, g);
+				w.nodes = 0;
+				int t = w.search(g, last);
+				nodes.addAndGet(w.nodes);
+				if (t==IdaStarSolver.FOUND) found(w.path, bound);
+				else if (t!=IdaStarSolver.ABORTED) minBound(t);
+			}
+		}
+
+		// Creates a task for each child inside the bound
+		private void split(IdaStarSolver w, int g) {
+			if (g+w.h>bound) { minBound(g+w.h); return; }
+			if (w.h==0) { found(prefix, g); return; }
+			nodes.incrementAndGet();
+			List<SearchTask> tasks = new ArrayList<SearchTask>(3);
+			for(int d=0 ; d<MoveTable.DIRS ; ++d) {
+				if (last>=0 && d==MoveTable.inverse(last)) continue;
+				if (!w.move(d)) continue;
+				int[] p = new int[g+1];
+				System.arraycopy(prefix, 0, p, 0, g);
+				p[g] = d;
+				tasks.add(new SearchTask(p, d));
+				w.move(MoveTable.inverse(d));
+			}
+			invokeAll(tasks);
+		}
+	}
+
+	// Records the first solution found
+	private void found(int[] path, int len) {
+		int[] sol = new int[len];
+		System.arraycopy(path, 0, sol, 0, len);
+		synchronized (found) {
+			if (found.get()) return;
+			solution = sol;
+			found.set(true);
+		}
+	}
+
+	// Updates the minimum cost that exceeded the bound
+	private void minBound(int f) {
+		int cur;
+		while (f<(cur = nextBound.get()) && !nextBound.compareAndSet(cur, f)) { }
+	}
+
+	/**
+	 * Compares the sequential and the parallel solvers in random boards.</br>
+	 * Usage: ParallelIdaStarSolver width height count moves [seed]
+	 */
+	public static void main(String[] args) {
+		if (args.length<4) {
+			System.err.println("Usage: ParallelIdaStarSolver width height count moves [seed]");
+			System.exit(1);
+		}
+		int w = Integer.parseInt(args[0]), h = Integer.parseInt(args[1]);
+		int count = Integer.parseInt(args[2]), moves = Integer.parseInt(args[3]);
+		Random rnd = args.length>4 ? new Random(Long.parseLong(args[4])) : new Random();
+		IdaStarSolver seq = new IdaStarSolver();
+		ParallelIdaStarSolver par = new ParallelIdaStarSolver();
+		long seqTime = 0, parTime = 0;
+		for(int i=0 ; i<count ; ++i) {
+			Board b = Boards.create(w, h, w-1);
+			for(int m=0 ; m<moves ; ++m) b.moveHole(Direction.of(rnd.nextInt(4)));
+			long t0 = System.nanoTime();
+			int len = seq.solve(b).length;
+			long t1 = System.nanoTime();
+			int plen = par.solve(b).length;
+			long t2 = System.nanoTime();
+			if (len!=plen) throw new IllegalStateException("Different lengths "+len+" "+plen);
+			seqTime += t1-t0; parTime += t2-t1;
+			System.out.printf("%3d: %d moves, sequential %d ms (%d nodes), parallel %d ms (%d nodes)\n",
+					i, len, (t1-t0)/1000000, seq.getNodes(), (t2-t1)/1000000, par.getNodes());
+		}
+		System.out.printf("Speedup with %d threads: %.2f\n", par.pool.getParallelism(), (double) seqTime/parTime);
+	}
+}
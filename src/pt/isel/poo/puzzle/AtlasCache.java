@@ -0,0 +1,195 @@
+package pt.isel.poo.puzzle;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LruCache;
+
+/**
+ * Cache of the images with all tiles (atlas) of the puzzle.</br>
+ * The atlas is drawn from the original image in a worker thread, and kept in a memory cache
+ * limited in bytes (least recently used are removed) and optionally in files of a directory.
+ * The cache is kept when the activity is recreated (see RetainedState),
+ * so after a rotation the atlas is ready without drawing or reading.
+ * The key of each atlas has a hash of the pixels of the image, computed in the worker
+ * once by image (the identities are kept while the image exists).
+ * Must be created and used in the UI thread. 
+ * @author Palex
+ */
+public class AtlasCache {
+
+	/**
+	 * Receives the atlas loaded, in the UI thread
+	 */
+	public interface Callback {
+		/**
+		 * @param tw width of each tile in the atlas
+		 * @param th height of each tile in the atlas
+		 */
+		void onAtlas(int tw, int th, Bitmap atlas);
+	}
+
+	// A load in progress and the callbacks waiting for it
+	private static class Request {
+		final Bitmap image;
+		final int xTiles, yTiles, tw, th;
+		final ArrayList<Callback> callbacks = new ArrayList<Callback>();
+
+		Request(Bitmap image, int xTiles, int yTiles, int tw, int th) {
+			this.image = image;
+			this.xTiles = xTiles; this.yTiles = yTiles; this.tw = tw; this.th = th;
+		}
+
+		boolean isFor(Bitmap image, int xTiles, int yTiles, int tw, int th) {
+			return this.image==image && this.xTiles==xTiles && this.yTiles==yTiles && this.tw==tw && this.th==th;
+		}
+	}
+
+	private final LruCache<String, Bitmap> memory;
+	private final File dir;		// Directory of files (or null)
+	private final ExecutorService worker;
+	private final Handler ui = new Handler(Looper.getMainLooper());
+	private final ArrayList<Request> pending = new ArrayList<Request>();
+	private final WeakHashMap<Bitmap, String> identities = new WeakHashMap<Bitmap, String>(); // Of the images loaded
+
+	/**
+	 * @param maxBytes maximum bytes of the atlas in memory
+	 * @param dir directory of the files of the atlas (null to not use files)
+	 */
+	public AtlasCache(int maxBytes, File dir) {
+		this.dir = dir;
+		memory = new LruCache<String, Bitmap>(maxBytes) {
+			@Override
+			protected int sizeOf(String key, Bitmap bm) {
+				return bm.getRowBytes() * bm.getHeight();
+			}
+		};
+		worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "atlas");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Identity of the image: dimensions and a 64 bits hash of the pixels,
+	 * so the files of other image with the same size are not used.
+	 * Reads the pixels of the image (a line at a time), so is called only in the worker.
+	 */
+	private static String identity(Bitmap image) {
+		int w = image.getWidth(), h = image.getHeight();
+		int[] line = new int[w];
+		long hash = 0xCBF29CE484222325L;	// FNV-1a of the pixels
+		for(int y=0 ; y<h ; ++y) {
+			image.getPixels(line, 0, w, 0, y, w, 1);
+			for(int p : line) hash = (hash ^ p) * 0x100000001B3L;
+		}
+		return w+"x"+h+"-"+Long.toHexString(hash);
+	}
+
+	// Key of an atlas of an image (identity) with tiles of that size
+	private static String key(String image, int xTiles, int yTiles, int tw, int th) {
+		return "atlas-"+image+"-"+xTiles+"x"+yTiles+"-"+tw+"x"+th;
+	}
+
+	/**
+	 * Loads in background the atlas of the image with tiles of that size, 
+	 * from memory, from the file or drawing the image.
+	 * The callback is called in the UI thread, when loaded (in this call, if the atlas is in memory).
+	 * @param image the original image (not changed)
+	 */
+	public void load(final Bitmap image, final int xTiles, final int yTiles, final int tw, final int th, Callback cb) {
+		final String id = identities.get(image);
+		if (id!=null) {
+			Bitmap bm = memory.get(key(id, xTiles, yTiles, tw, th));
+			if (bm!=null) { cb.onAtlas(tw, th, bm); return; }
+		}
+		for(Request r : pending)
+			if (r.isFor(image, xTiles, yTiles, tw, th)) { r.callbacks.add(cb); return; }	// Already loading
+		final Request req = new Request(image, xTiles, yTiles, tw, th);
+		req.callbacks.add(cb);
+		pending.add(req);
+		worker.execute(new Runnable() {
+			@Override
+			public void run() {
+				final String imageId = id!=null ? id : identity(image);
+				final String key = key(imageId, xTiles, yTiles, tw, th);
+				Bitmap bm = memory.get(key);	// Other instance of the same image (after a rotation)
+				final Bitmap atlas = bm!=null ? bm : loadOrDraw(key, image, tw*xTiles, th*yTiles);
+				ui.post(new Runnable() {
+					@Override
+					public void run() { loaded(req, imageId, key, atlas); }
+				});
+			}
+		});
+	}
+
+	/**
+	 * Removes the callback from the loads in progress (when the activity is destroyed).
+	 * The loads continue to the cache.
+	 */
+	public void cancel(Callback cb) {
+		for(Request r : pending)
+			r.callbacks.remove(cb);
+	}
+
+	// In UI thread: keeps the atlas and calls the callbacks
+	private void loaded(Request req, String imageId, String key, Bitmap atlas) {
+		identities.put(req.image, imageId);
+		memory.put(key, atlas);
+		pending.remove(req);
+		for(Callback cb : req.callbacks) cb.onAtlas(req.tw, req.th, atlas);
+	}
+
+	// In the worker thread: reads the file or draws the image (and writes the file)
+	private Bitmap loadOrDraw(String key, Bitmap image, int w, int h) {
+		File f = dir!=null ? new File(dir, key+".png") : null;
+		if (f!=null && f.exists()) {
+			Bitmap bm = BitmapFactory.decodeFile(f.getPath());
+			if (bm!=null && bm.getWidth()==w && bm.getHeight()==h) return bm;
+		}
+		Bitmap bm = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+		Canvas cv = new Canvas(bm);
+		cv.drawColor(Color.WHITE);		// Background color for transparent images
+		cv.drawBitmap(image, null, new Rect(0, 0, w, h), new Paint(Paint.FILTER_BITMAP_FLAG));
+		if (f!=null)
+			try {
+				FileOutputStream out = new FileOutputStream(f);
+				try { bm.compress(Bitmap.CompressFormat.PNG, 100, out); }
+				finally { out.close(); }
+			} catch (IOException e) { 
+				f.delete();		// Draws again next time
+			}
+		return bm;
+	}
+
+	/**
+	 * Removes all atlas from memory
+	 */
+	public void clear() { memory.evictAll(); }
+
+	/**
+	 * Stops the worker thread (when the activity terminates)
+	 */
+	public void shutdown() {
+		worker.shutdown();
+		pending.clear();
+	}
+}
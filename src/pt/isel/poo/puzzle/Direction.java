@@ -16,23 +16,38 @@ public enum Direction {
 		this.dx=dx; this.dy=dy;
 	}
 	
+	private static final Direction[] VALUES = values(); // values() creates a new array in each call
+	
+	/**
+	 * @return the direction with that ordinal, without creating an array
+	 */
+	public static Direction of(int ordinal) {
+		return VALUES[ordinal];
+	}
+	
 	public Direction opposite() {
-		return values()[(ordinal()+2)%values().length];
+		return VALUES[(ordinal()+2)%VALUES.length];
 	}
 	
-	private static Random rnd = new Random();
+	private static Random rnd = new Random();	// Shared (thread safe, not reproducible)
 	
 	public static Direction random() {
-		return values()[rnd.nextInt(values().length)];
+		return random(rnd);
 	}
 	
 	public static Direction random(Direction except) {
-		int i, r = rnd.nextInt(values().length-1);
-		for(i=0 ; i<values().length ; ++i) {
-			if (values()[i]==except) continue;
-			if (r==0) break;
-			--r;
-		}
-		return values()[i];
+		return random(rnd, except);
+	}
+
+	/**
+	 * @param rnd the generator (for reproducible sequences, a seeded SplitRandom)
+	 */
+	public static Direction random(Random rnd) {
+		return VALUES[rnd.nextInt(VALUES.length)];
+	}
+	
+	public static Direction random(Random rnd, Direction except) {
+		int i = rnd.nextInt(VALUES.length-1);
+		return i<except.ordinal() ? VALUES[i] : VALUES[i+1];
 	}
 }
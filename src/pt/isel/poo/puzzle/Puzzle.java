@@ -1,15 +1,41 @@
 package pt.isel.poo.puzzle;
 
+import java.io.File;
+import java.io.IOException;
+
 import pt.isel.poo.puzzle.TilePanel.Tile;
-import android.app.Activity;
+import pt.isel.poo.puzzle.anim.FrameStats;
+import pt.isel.poo.puzzle.model.Board;
+import pt.isel.poo.puzzle.model.BoardEvents;
+import pt.isel.poo.puzzle.model.Boards;
+import pt.isel.poo.puzzle.model.MoveJournal;
+import pt.isel.poo.puzzle.model.MoveTable;
+import pt.isel.poo.puzzle.model.ObservedBoard;
+import pt.isel.poo.puzzle.model.Shuffler;
+import pt.isel.poo.puzzle.model.SplitRandom;
+import pt.isel.poo.puzzle.model.StateCodec;
+import pt.isel.poo.puzzle.solver.Heuristic;
+import pt.isel.poo.puzzle.solver.HintService;
+import pt.isel.poo.puzzle.solver.IdaStarSolver;
+import pt.isel.poo.puzzle.solver.LinearConflictHeuristic;
+import pt.isel.poo.puzzle.solver.PatternDatabaseFile;
+import pt.isel.poo.puzzle.solver.PdbHeuristic;
+import pt.isel.poo.puzzle.solver.PuzzleCatalog;
+import pt.isel.poo.puzzle.solver.ReductionSolver;
+import pt.isel.poo.puzzle.solver.TranspositionTable;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
-import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Point;
 import android.graphics.Rect;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
+import android.support.v4.app.FragmentActivity;
+import android.support.v4.app.FragmentManager;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.MotionEvent;
 import android.widget.ImageView;
 
@@ -17,17 +43,46 @@ import android.widget.ImageView;
  * The main activity of the puzzle game.
  * @author Palex
  */
-public class Puzzle extends Activity implements TilePanel.TouchListener {
+public class Puzzle extends FragmentActivity implements TilePanel.TouchListener {
 
-	static final int IMAGE_SIZE= 1000;   // Image width and height in pixel (for Bitmap)
+	static final int HINT_NODES= 200000; // Maximum nodes expanded by the solver to find a hint
+	static final int HINT_TABLE= 1<<22;  // Bytes of the transposition table of the solver
+	static final int SHUFFLE_ANIM= 4;    // Number of last shuffle moves to animate
+	static final int SHUFFLE_MIN= SHUFFLE_ANIM+1; // Minimum optimal length of the boards of the catalog
+	static final int SOLVE_DELAY= 150;   // Milliseconds between moves of the automatic solve
+	static final int SOLVE_BUDGET= 50;   // Milliseconds to improve the automatic solve
+	static final int JOURNAL_MOVES= 1<<20; // Maximum moves to undo (256KB)
+	static final String TAG= "Puzzle";	 // Tag of the log messages
+	static final int ATLAS_MEMORY= (int) Math.min(Runtime.getRuntime().maxMemory()/8, Integer.MAX_VALUE); // Bytes of atlas cache
 	int puzzleWidth, puzzleHeight;       // Puzzle dimensions in tiles (defined in layout)
-	int tileWidth, tileHeight;			 // Image tile dimensions in pixels (for each Bitmap) 
 	Point freeSpace;					 // Location of hole in tiles
-	int shuffleMoves;					 // Number of moves to shuffle
 	
 	TilePanel tp;		// The View Panel of tiles to support puzzle
 	Tile[][] grid;		// Tiles in original position
+	TileAtlas atlas;	// Image shared by all tiles
+	RetainedState retained; // Kept when the activity is recreated
+	AtlasCache atlasCache; // Atlas loaded (kept by the retained state)
+	Board board;		// Model of the puzzle (the tile in each position)
+	BoardEvents changes; // Changes of the board, delivered after each message of the UI thread
+	long hintAt;		// Changes published when the last hint was requested
+	MoveTable moves;	// Adjacent positions of each position
+	Tile[][] shown;		// Tiles to show in each position (to update TilePanel at once)
+	StateCodec codec;	// To save and restore the board
+	MoveJournal journal; // Moves done, to undo and redo
+	int[] cells;		// Auxiliary array with the tile of each position
+	SplitRandom seeds;	// Generator of the seeds of the games
+	long seed;			// Seed of the current game (the shuffle depends only on it and the catalog)
+	SplitRandom rnd;	// Random generator to shuffle (restarted with the seed of each game)
+	Shuffler generator;	// Generator of random positions
+	PuzzleCatalog catalog; // Positions graded by difficulty (null if not available)
+	int[] walk;			// Moves to animate in shuffle
+	HintService hints;	// Computes the hints in background
+	ReductionSolver reducer; // Solver of any board (not optimal) to solve automatically (used by the hint service)
+	Direction[] solution; // Moves of the automatic solve
+	int solveStep;		// Next move of the solution
+	long solveAt;		// Changes published when the solution was requested
 	FinishDialog dlg;	// Dialog used when puzzle terminated
+	FrameStats frameStats; // Timing of frames and touches (only in debug builds)
 
 	/**
 	 * From the puzzle dimensions, calculate all values
@@ -35,13 +90,62 @@ public class Puzzle extends Activity implements TilePanel.TouchListener {
 	private void computeValues() {
 		puzzleWidth = tp.getWidthInTiles();
 		puzzleHeight = tp.getHeightInTiles();
-		tileWidth = IMAGE_SIZE / puzzleWidth;
-		tileHeight = IMAGE_SIZE / puzzleHeight;
 		freeSpace = new Point(puzzleWidth-1,0);  // The hole in top right corner
-		shuffleMoves = puzzleHeight * puzzleWidth * 4;
 		grid = new Tile[puzzleWidth][puzzleHeight];
+		shown = new Tile[puzzleWidth][puzzleHeight];
+		moves = MoveTable.get(puzzleWidth, puzzleHeight);
+		codec = new StateCodec(puzzleWidth*puzzleHeight);
+		journal = new MoveJournal(JOURNAL_MOVES);
+		cells = new int[puzzleWidth*puzzleHeight];
+		changes = new BoardEvents();
+		changes.setPendingHook(new Runnable() {
+			@Override
+			public void run() { tp.post(flushChanges); }
+		});
+		changes.addObserver(finishObserver, false);
+		board = new ObservedBoard(Boards.create(puzzleWidth, puzzleHeight, freeSpace.y*puzzleWidth+freeSpace.x), changes);
+		IdaStarSolver solver = new IdaStarSolver(heuristics());
+		solver.setNodeLimit(HINT_NODES);
+		solver.setTranspositionTable(new TranspositionTable(HINT_TABLE));
+		hints = new HintService(solver, new ReductionSolver());
+		reducer = new ReductionSolver();
+		reducer.setTimeBudget(SOLVE_BUDGET);
+		seeds = new SplitRandom();
+		rnd = new SplitRandom();
+		generator = new Shuffler(rnd);
+		catalog = loadCatalog();
+		walk = new int[SHUFFLE_ANIM];
 	}
 	
+	/**
+	 * Heuristics to the solver. Uses the pattern databases of the puzzle dimensions, if exists
+	 * the file "pdb-WxH.bin" (built offline by PatternDatabaseFile) in the files directory.
+	 */
+	private Heuristic.Factory heuristics() {
+		File f = new File(getFilesDir(), "pdb-"+puzzleWidth+"x"+puzzleHeight+".bin");
+		if (f.exists())
+			try {
+				return PdbHeuristic.factory(PatternDatabaseFile.load(f), LinearConflictHeuristic.FACTORY);
+			} catch (IOException e) { // Invalid file: uses the default heuristic 
+			} catch (IllegalArgumentException e) { }
+		return LinearConflictHeuristic.FACTORY;
+	}
+
+	/**
+	 * Loads the catalog of positions for the puzzle dimensions, if exists the file
+	 * "catalog-WxH.bin" (built offline by PuzzleCatalog) in the files directory.
+	 */
+	private PuzzleCatalog loadCatalog() {
+		File f = new File(getFilesDir(), "catalog-"+puzzleWidth+"x"+puzzleHeight+".bin");
+		if (f.exists())
+			try {
+				PuzzleCatalog c = PuzzleCatalog.load(f);
+				if (c.getWidth()==puzzleWidth && c.getHeight()==puzzleHeight && c.getGoalHole()==board.getGoalHole())
+					return c;
+			} catch (IOException e) { } // Invalid file: uses random positions 
+		return null;
+	}
+
 	/**
 	 * Create activity
 	 */
@@ -51,34 +155,186 @@ public class Puzzle extends Activity implements TilePanel.TouchListener {
 		setContentView(R.layout.puzzle);
 		tp = (TilePanel) findViewById(R.id.tilePanel);
 		tp.setTouchListener(this);
+		if (BuildConfig.DEBUG) { // Instrumentation of the panel, logged in onPause
+			frameStats = new FrameStats(TilePanel.FRAME_TIME);
+			tp.setFrameListener(frameStats);
+		}
+		retained = retainedState();
+		atlasCache = retained.atlasCache;
 		computeValues();
 		fillGrid();
 		if (state==null) // Is the first call?
 			startPuzzle();
 	}
 
+	/**
+	 * The state kept to the new activity (after a rotation), created in the first call
+	 */
+	private RetainedState retainedState() {
+		FragmentManager fm = getSupportFragmentManager();
+		RetainedState rs = (RetainedState) fm.findFragmentByTag(RetainedState.TAG);
+		if (rs==null) { // Is not a recreation of the activity?
+			rs = new RetainedState();
+			fm.beginTransaction().add(rs, RetainedState.TAG).commit();
+		}
+		if (rs.atlasCache==null)
+			rs.atlasCache = new AtlasCache(ATLAS_MEMORY, getCacheDir());
+		return rs;
+	}
+
+	/**
+	 * In debug builds, logs the timing of the frames and touches since the last pause
+	 */
+	@Override
+	protected void onPause() {
+		super.onPause();
+		if (frameStats==null) return;
+		Log.d(TAG, frameStats.snapshot().toString());
+		frameStats.reset();
+	}
+
+	/**
+	 * Stops the thread of hints and removes the pending loads of the atlas
+	 * (the atlas cache is stopped by the retained state when terminated)
+	 */
+	@Override
+	protected void onDestroy() {
+		hints.shutdown();
+		atlasCache.cancel(atlas);	// The cache is kept, but must not keep this activity
+		super.onDestroy();
+	}
+
+	/**
+	 * Adds the action to solve automatically
+	 */
+	@Override
+	public boolean onCreateOptionsMenu(Menu menu) {
+		getMenuInflater().inflate(R.menu.puzzle, menu);
+		return true;
+	}
+
+	@Override
+	public boolean onOptionsItemSelected(MenuItem item) {
+		int id = item.getItemId();
+		if (id!=R.id.solve && id!=R.id.undo && id!=R.id.redo) return super.onOptionsItemSelected(item);
+		tp.removeCallbacks(autoSolver);
+		hints.cancel();
+		if (id==R.id.undo) undo();
+		else if (id==R.id.redo) redo();
+		else if (!board.isSolved()) { // Solved in background, the moves are played when ready
+			solveAt = changes.getTotal();
+			hints.requestSolution(board, reducer, solutionListener);
+		}
+		return true;
+	}
+
+	/**
+	 * Delivers the changes of the board made in the last message of the UI thread
+	 */
+	private final Runnable flushChanges = new Runnable() {
+		@Override
+		public void run() { changes.flush(); }
+	};
+
+	/**
+	 * Verifies if the puzzle is complete after moves (not after reset or restore)
+	 */
+	private final BoardEvents.Observer finishObserver = new BoardEvents.Observer() {
+		@Override
+		public void onChanges(BoardEvents events, int count) {
+			if (!events.isReset(count-1)) verifyFinish();
+		}
+	};
+
+	/**
+	 * Undoes the last line move
+	 */
+	private void undo() {
+		int d = journal.last(), n = journal.undo();
+		if (n>0) slideHole(Direction.of(d).opposite(), n);
+	}
+
+	/**
+	 * Redoes the line move undone
+	 */
+	private void redo() {
+		int d = journal.next(), n = journal.redo();
+		if (n>0) slideHole(Direction.of(d), n);
+	}
+
+	/**
+	 * Moves the hole n positions in direction d, sliding the line of tiles without recording it
+	 * @return false if not possible (the journal is not of this board and is cleared)
+	 */
+	private boolean slideHole(Direction d, int n) {
+		int hole = board.getHole();
+		int x = hole%puzzleWidth, y = hole/puzzleWidth;
+		int xt = x+d.dx*n, yt = y+d.dy*n;	// The farthest tile moved
+		if (xt>=0 && xt<puzzleWidth && yt>=0 && yt<puzzleHeight && slideLine(xt, yt, x, y)==n) return true;
+		journal.clear();
+		return false;
+	}
+
+	/**
+	 * The Runnable object to make the next move of the automatic solve.
+	 * Stops when the puzzle is solved, shuffled or a tile is moved by the user.
+	 */
+	private Runnable autoSolver = new Runnable() {
+		@Override
+		public void run() {
+			if (solution==null || solveStep>=solution.length) return;	// Solved
+			if (!moveHole(solution[solveStep++], null)) return;
+			tp.postDelayed(this, SOLVE_DELAY);
+		}
+	};
+
+	/**
+	 * Receives the solution (in the thread of the service) and starts playing it in the UI thread,
+	 * if the board was not changed meanwhile.
+	 */
+	private final HintService.SolutionListener solutionListener = new HintService.SolutionListener() {
+		@Override
+		public void onSolution(Board b, final Direction[] moves) {
+			if (moves==null) return;
+			tp.post(new Runnable() {
+				@Override
+				public void run() {
+					if (changes.getTotal()!=solveAt) return; // Changed board since the request
+					solution = moves;
+					solveStep = 0;
+					autoSolver.run();
+				}
+			});
+		}
+	};
+
 	/**
 	 * Initializes TilePanel and shuffle
 	 */
 	private void startPuzzle() {
+		board.reset();
+		journal.clear();
 		tp.setAllTiles(grid);
 		tp.postDelayed(shuffler, 2000);  // Shuffling after two seconds 
 	}
 
 	/**
 	 * Save state of puzzle when activity suspended.
-	 * Stores an array with the current position of each tile.
+	 * Stores the rank of the position (a long until 20 tiles, an encoded array beyond)
+	 * the moves of the journal and the seed of the game.
+	 * The rank is only computed here, not in each move.
 	 */
 	@Override
 	protected void onSaveInstanceState(Bundle outState) { 
 		super.onSaveInstanceState(outState);
-		int[] state = new int[puzzleWidth * puzzleHeight];
-	    for(int x=0, idx=0; x<puzzleWidth ; ++x) 
-		  for(int y=0 ; y<puzzleHeight ; ++y, ++idx) {
-			Point p = findTile(grid[x][y]);
-	        state[idx] = p.y * puzzleWidth + p.x;
-		  }
-		outState.putIntArray("puzzle", state);
+		board.getCells(cells);
+		outState.putInt("puzzleSize", cells.length);
+		if (StateCodec.fitsLong(cells.length))
+			outState.putLong("puzzle", codec.rank(cells));
+		else
+			outState.putByteArray("puzzle", codec.encode(cells));
+		outState.putByteArray("journal", journal.encode());
+		outState.putLong("seed", seed);
 	}
 	
 	/**
@@ -87,14 +343,41 @@ public class Puzzle extends Activity implements TilePanel.TouchListener {
 	@Override
 	protected void onRestoreInstanceState(Bundle savedInstanceState) {
 		super.onRestoreInstanceState(savedInstanceState);
-		int[] state = savedInstanceState.getIntArray("puzzle");
-		if (state.length != puzzleHeight*puzzleWidth) // Different sizes?
+		if (savedInstanceState.getInt("puzzleSize", -1) != cells.length) { // Different sizes?
+			startPuzzle();
+			return;
+		}
+		try {
+			if (StateCodec.fitsLong(cells.length))
+				codec.unrank(savedInstanceState.getLong("puzzle", -1), cells);
+			else
+				codec.decode(savedInstanceState.getByteArray("puzzle"), cells);
+			board.setCells(cells);
+		} catch (IllegalArgumentException e) { // Invalid state?
 			startPuzzle();
-		else {
-		    for(int x=0, idx=0; x<puzzleWidth ; ++x) 
-			  for(int y=0 ; y<puzzleHeight ; ++y, ++idx)
-				tp.setTile(state[idx]%puzzleWidth, state[idx]/puzzleWidth, grid[x][y]);
+			return;
 		}
+		if (!Boards.isSolvable(board)) {
+			startPuzzle();
+			return;
+		}
+		showBoard();
+		seed = savedInstanceState.getLong("seed", seed);
+		try {
+			journal.decode(savedInstanceState.getByteArray("journal"));
+		} catch (IllegalArgumentException e) { // Without moves to undo
+			journal.clear();
+		}
+	}
+
+	/**
+	 * Shows in TilePanel the tiles of the board, with only one invalidate
+	 */
+	private void showBoard() {
+	    for(int y=0, idx=0; y<puzzleHeight ; ++y) 
+		  for(int x=0 ; x<puzzleWidth ; ++x, ++idx)
+			shown[x][y] = tileOf(board.getTile(idx));
+	    tp.setAllTiles(shown);
 	}
 	
 	/**
@@ -102,46 +385,55 @@ public class Puzzle extends Activity implements TilePanel.TouchListener {
 	 */
 	private Runnable shuffler = new Runnable() {
 		@Override
-		public void run() { shuffle(shuffleMoves); }
+		public void run() { shuffle(); }
 	}; 
 		
 	/**
-	 * Returns the current position of a tile
-	 * @param t	tile to find
-	 * @return the position (x,y) of tile
+	 * Returns the tile object of a board tile
+	 * @param t	tile in board (index of the home position)
+	 * @return the tile to show in TilePanel (null for the hole)
 	 */
-	private Point findTile(Tile t) {
-	  for(int x=0; x<puzzleWidth ; ++x) 
-		for(int y=0 ; y<puzzleHeight ; ++y)
-		  if (tp.getTile(x,y) == t) return new Point(x,y);
-	  return null;
+	private Tile tileOf(int t) {
+		return grid[t%puzzleWidth][t/puzzleWidth];
 	}
 	
 	/**
-	 * Verify if (x,y) is a valid position in puzzle
+	 * Shuffle puzzle.
+	 * Puts the board in a random position (from the catalog, if available) and animates only the last moves.
 	 */
-	private boolean validPosition(int x, int y) {
-		return x >= 0 && x < puzzleWidth && y >= 0 && y< puzzleHeight;
+	private void shuffle() {
+		shuffle(seeds.nextLong());
 	}
-	
+
 	/**
-	 * Shufle puzzle
-	 * @param n Number of moves to make
-	 */
-	private void shuffle(int n) {
-		Point p = findTile(null); // The hole position
-		int x, y;				  // Temporary position to try
-		Direction d;			  // Temporary move direction
-		Direction dir=null;		  // Last move direction
-		while ( n>0 ) {
-			d = dir==null ? Direction.random() : Direction.random(dir.opposite()); 
-			x = p.x + d.dx;
-			y = p.y + d.dy;
-			if ( ! validPosition(x,y) ) continue;
-			onDrag(x,y, p.x, p.y, null);
-			p.x=x; p.y=y;	
-			--n; dir=d;
+	 * Shuffle puzzle with the seed of a game: the same seed gives the same board.
+	 */
+	private void shuffle(long gameSeed) {
+		seed = gameSeed;
+		rnd.setSeed(seed);
+		tp.removeCallbacks(autoSolver);
+		hints.cancel();
+		// The catalog has boards of any length, even solved: only the not trivial
+		int length = catalog!=null ? catalog.random(rnd, SHUFFLE_MIN, catalog.getMaxLength(), board) : -1;
+		if (length<0 || board.isSolved()) {
+			generator.shuffle(board);	// Never solved
+			length = -1;				// Unknown
 		}
+		// Goes back some moves to animate them
+		int n = generator.walk(board, SHUFFLE_ANIM, walk);
+		showBoard();
+		while (n>0)
+			moveHole(Direction.of(walk[--n]).opposite(), null);
+		journal.clear();
+		showRating(length);
+	}
+
+	/**
+	 * Shows in the title the difficulty of the board (the optimal number of moves of the catalog), if known
+	 * @param length the optimal number of moves, or -1 if unknown
+	 */
+	private void showRating(int length) {
+		setTitle(length>=0 ? getString(R.string.rating, length) : getString(R.string.app_name));
 	}
 
 	/**
@@ -150,74 +442,145 @@ public class Puzzle extends Activity implements TilePanel.TouchListener {
 	private void fillGrid() {
 		// Get image defined in layout to ImageView element
 		Drawable d = ((ImageView) findViewById(R.id.imageView)).getDrawable();
-		// Create a bitmap in memory to store image
-		Bitmap image = Bitmap.createBitmap(IMAGE_SIZE, IMAGE_SIZE, Bitmap.Config.ARGB_8888);
-		Canvas cv = new Canvas(image);  // Create canvas to draw in bitmap 
-		cv.drawColor(Color.WHITE);		// Draw background color for transparent images
-		d.setBounds(0, 0, IMAGE_SIZE, IMAGE_SIZE);
-		d.draw(cv);						// Draw image in bitmap
+		// The atlas is only loaded when the tiles are drawn, with the size of the tiles
+		atlas = new TileAtlas(atlasCache, imageOf(d), puzzleWidth, puzzleHeight, tp);
 		for(int x=0 ; x<puzzleWidth ; ++x)
 			for(int y=0 ; y<puzzleHeight ; ++y) {
 				// A null tile in the free space of puzzle 
 				if (freeSpace.equals(x, y)) continue;
 				// Creates a tile with a portion of the image
-				grid[x][y] = new PuzzleTile(tileWidth,tileHeight,image,x,y);
+				grid[x][y] = new PuzzleTile(atlas,x,y);
 			}
 	}	
 	
+	/**
+	 * The bitmap of the image (drawn in a new bitmap if is not a bitmap)
+	 */
+	private static Bitmap imageOf(Drawable d) {
+		if (d instanceof BitmapDrawable) return ((BitmapDrawable) d).getBitmap();
+		int w = d.getIntrinsicWidth(), h = d.getIntrinsicHeight();
+		if (w<=0 || h<=0) w = h = 1000;
+		Bitmap bm = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+		Rect old = d.copyBounds();	// The image is also used by ImageView
+		d.setBounds(0, 0, w, h);
+		d.draw(new Canvas(bm));
+		d.setBounds(old);
+		return bm;
+	}
+
 	/**
 	 * TilePanel callback when a tile is clicked.
+	 * Clicking the hole moves the tile suggested by the solver.
 	 */
 	@Override
 	public boolean onClick(int xT, int yT, MotionEvent ev) {
-		int x, y;
-		for(int i=0 ; i<Direction.values().length ; ++i) {
-			Direction d = Direction.values()[i];
-			x = xT + d.dx; y = yT + d.dy;
-			if (validPosition(x,y) && tp.getTile(x, y)==null) 
+		int hole = board.getHole();
+		int x = hole%puzzleWidth, y = hole/puzzleWidth;
+		if (x==xT && y==yT) return hint(ev);
+		int cell = yT*puzzleWidth+xT;
+		for(int i=0, n=moves.count(hole) ; i<n ; ++i) 
+			if (moves.target(hole, moves.dir(hole, i))==cell) // Adjacent to the hole?
 				return onDrag(xT,yT,x,y,ev);
-		}
 		return false;
 	}
 
+	/**
+	 * Moves the tile of the next move in a shortest solution (or in a longer one, if too hard to find).
+	 * The move is done when the hint service finds it.
+	 * @return false if the puzzle is solved
+	 */
+	private boolean hint(MotionEvent ev) {
+		if (board.isSolved()) return false;
+		tp.removeCallbacks(autoSolver);
+		hintAt = changes.getTotal();
+		hints.request(board, hintListener);
+		return true;
+	}
+
+	/**
+	 * Receives the hints (in the thread of the service) and moves the tile in the UI thread,
+	 * if the board was not changed meanwhile.
+	 */
+	private final HintService.Listener hintListener = new HintService.Listener() {
+		@Override
+		public void onHint(Board b, final Direction d) {
+			if (d==null) return;
+			tp.post(new Runnable() {
+				@Override
+				public void run() {
+					if (changes.getTotal()!=hintAt) return; // Changed board since the request
+					moveHole(d, null);
+				}
+			});
+		}
+	};
+
+	/**
+	 * Moves the tile adjacent to the hole in that direction
+	 */
+	private boolean moveHole(Direction d, MotionEvent ev) {
+		if (d==null) return false;
+		int hole = board.getHole();
+		int x = hole%puzzleWidth, y = hole/puzzleWidth;
+		return onDrag(x+d.dx, y+d.dy, x, y, ev);
+	}
+
 	/**
 	 * Try make a move. Can move more than one tile in line to the hole.
 	 * TilePanel callback when a tile is dragged.
 	 */
 	@Override
 	public boolean onDrag(int xFrom, int yFrom, int xTo, int yTo, MotionEvent ev) {
-		int dx = xTo-xFrom, dy = yTo-yFrom;
-		if (dx!=0 && dy!=0) return false; // Diagonal move not allowed
-		int x = xTo, y = yTo;
-		// Find the hole in move direction
-		while(tp.getTile(x, y)!=null) { 
-			x+=dx; y+=dy;
-			if ( !validPosition(x,y) ) return false; // Hole not found
-		};
+		int n = slideLine(xFrom, yFrom, xTo, yTo);
+		if (n==0) return false;
+		// The hole moved in the opposite direction of the tiles
+		int dx = Integer.signum(xTo-xFrom), dy = Integer.signum(yTo-yFrom);
+		journal.add(dx<0 ? Direction.RIGHT.ordinal() : dx>0 ? Direction.LEFT.ordinal() 
+				: dy<0 ? Direction.DOWN.ordinal() : Direction.UP.ordinal(), n);
+		if (ev!=null) { // ev==null in shuffle, automatic solve and hints from the service
+			tp.removeCallbacks(autoSolver);
+			hints.cancel();
+		}
+		return true;
+	}
+
+	/**
+	 * Slides the tiles from (xFrom,yFrom) to the hole, in direction of (xTo,yTo).
+	 * The model is changed first, and TilePanel only if the move is valid.
+	 * @return number of tiles moved (0 if not in line with the hole or out of the board)
+	 */
+	private int slideLine(int xFrom, int yFrom, int xTo, int yTo) {
+		int dx = Integer.signum(xTo-xFrom), dy = Integer.signum(yTo-yFrom);
+		if (dx!=0 && dy!=0) return 0; // Diagonal move not allowed
+		if (dx==0 && dy==0) return 0; // No move
+		int hole = board.getHole();
+		int x = hole%puzzleWidth, y = hole/puzzleWidth;
+		// The hole must be in line, in move direction
+		if (Integer.signum(x-xFrom)!=dx || Integer.signum(y-yFrom)!=dy) return 0;
+		if (xFrom<0 || xFrom>=puzzleWidth || yFrom<0 || yFrom>=puzzleHeight) return 0;
+		int n = board.slide(yFrom*puzzleWidth+xFrom);
+		if (n==0) return 0;
 		// Move all tiles to the hole direction, from the hole until the first tile
+		tp.beginUpdate();	// One invalidate and one group of animations
 		do { 
 			tp.FloatTile(x-dx,y-dy, x,y, 500); 
 			x-=dx; y-=dy;
 		} while(x!=xFrom || y!=yFrom);
 		// Put the hole in the first tile position
 		tp.setTile(x,y,null); 
-		// If the hole is placed in free space, verifies if the puzzle is complete   
-		if (freeSpace.equals(x,y) && ev!=null) // ev==null in shuffle
-			verifyFinish();
-		return true;
+		tp.endUpdate();
+		return n;
 	}
 
 	/**
-	 * Compares all position of the puzzle
+	 * Verifies if the puzzle is complete
 	 */
 	private void verifyFinish() {
-		for(int x=0 ; x<puzzleWidth ; ++x)
-			for(int y=0 ; y<puzzleHeight ; ++y)
-				if (grid[x][y] != tp.getTile(x, y)) return;
+		if (!board.isSolved()) return;
 		// Start the finish dialog
 		if (dlg==null)
 			 dlg = new FinishDialog();
-		dlg.show(getFragmentManager(), "finishDialog");
+		dlg.show(getSupportFragmentManager(), "finishDialog");
 	}
 	
 	/**
@@ -226,18 +589,61 @@ public class Puzzle extends Activity implements TilePanel.TouchListener {
 	 */
 	public void onFinishDialog(int result) {
 		if (result==FinishDialog.SHUFFLE)
-			shuffle(shuffleMoves);			
+			shuffle();			
 		else 
 			finish();
 	}
 	
+	/**
+	 * Image of the puzzle with all the tiles, shared by all tiles (flyweight).
+	 * The bitmap is loaded by the cache with the size of the tiles in the screen,
+	 * when the first tile is drawn or the size of the tiles changes.
+	 * Until loaded the tiles are not drawn, and the panel is invalidated when loaded.
+	 */
+	static class TileAtlas implements AtlasCache.Callback {
+		final AtlasCache cache;
+		final Bitmap image;			// Original image 
+		final int xTiles, yTiles;	// Dimensions in tiles
+		final TilePanel panel;		// To redraw when loaded
+		Bitmap bm;					// Image with all tiles
+		int tw, th;					// Dimensions of each tile in bm
+		boolean loading;			// An atlas is being loaded
+		int lw, lh;					// Dimensions of each tile being loaded
+		
+		TileAtlas(AtlasCache cache, Bitmap image, int xTiles, int yTiles, TilePanel panel) {
+			this.cache = cache;
+			this.image = image;
+			this.xTiles = xTiles; this.yTiles = yTiles;
+			this.panel = panel;
+		}
+		
+		// Returns true if the bitmap has that tile size, or starts loading it
+		boolean prepare(int w, int h) {
+			if (bm!=null && tw==w && th==h) return true;
+			if (loading && lw==w && lh==h) return false;
+			loading = true; lw = w; lh = h;
+			cache.load(image, xTiles, yTiles, w, h, this);
+			return !loading; // Was in memory?
+		}
+
+		@Override
+		public void onAtlas(int w, int h, Bitmap atlas) {
+			if (!loading || w!=lw || h!=lh) return;	// Other size was requested
+			bm = atlas; tw = w; th = h;
+			loading = false;
+			panel.invalidateTiles();
+		}
+	}
+	
 	/**
 	 * Class to implement each tile of puzzle
 	 * @author Palex
 	 */
 	public static class PuzzleTile implements TilePanel.Tile {
 		
-		Bitmap bm;			// Image memory of that tile
+		final TileAtlas atlas;	// Image with all tiles
+		final int x, y;			// Position of the tile in image
+		final Rect src = new Rect(); // Area of the tile in atlas
 		boolean selected;	// The tile touched is selected
 
 		static Rect dst;	// Auxiliary variables to reuse in draw()
@@ -247,9 +653,10 @@ public class Puzzle extends Activity implements TilePanel.TouchListener {
 		static Paint paint = new Paint();    // To paint selected tile
 		static { paint.setStrokeWidth(3); }
 		
-		// Create a bitmap with image of tile (partial image of puzzle)
-		public PuzzleTile(int width, int height, Bitmap b, int x, int y) {
-			bm = Bitmap.createBitmap(b,x*width,y*height,width,height);
+		// Create a tile with a partial image of puzzle
+		public PuzzleTile(TileAtlas atlas, int x, int y) {
+			this.atlas = atlas;
+			this.x = x; this.y = y;
 		}
 
 		@Override
@@ -259,8 +666,11 @@ public class Puzzle extends Activity implements TilePanel.TouchListener {
 				lastW = w;
 				lines=null;
 			}
-			// draw the bitmap
-			canvas.drawBitmap(bm, null, dst, null);
+			// draw the area of the tile in atlas
+			if (atlas.prepare(w, h)) {
+				src.set(x*w, y*h, x*w+w, y*h+h);
+				canvas.drawBitmap(atlas.bm, src, dst, null);
+			}
 			if (selected) {
 				if (lines==null) {
 					w -=2; h-=2;
@@ -0,0 +1,34 @@
+package pt.isel.poo.puzzle;
+
+import android.os.Bundle;
+import android.support.v4.app.Fragment;
+
+/**
+ * Fragment without view, retained when the activity is recreated (after a rotation),
+ * that keeps the objects expensive to create again: the atlas cache and its worker thread.</br>
+ * Destroyed only when the activity terminates, stopping the worker.
+ * @author Palex
+ */
+public class RetainedState extends Fragment {
+
+	public static final String TAG = "retained";
+
+	AtlasCache atlasCache;	// Atlas loaded (null until created by the activity)
+
+	public RetainedState() { }
+
+	@Override
+	public void onCreate(Bundle state) {
+		super.onCreate(state);
+		setRetainInstance(true);
+	}
+
+	/**
+	 * The activity terminated: stops the thread of the atlas cache
+	 */
+	@Override
+	public void onDestroy() {
+		if (atlasCache!=null) atlasCache.shutdown();
+		super.onDestroy();
+	}
+}
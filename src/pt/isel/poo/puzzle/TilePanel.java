@@ -1,14 +1,21 @@
 package pt.isel.poo.puzzle;
 
 import java.security.InvalidParameterException;
-import java.util.Iterator;
-import java.util.LinkedList;
 
+import pt.isel.poo.puzzle.anim.Animations;
+import pt.isel.poo.puzzle.anim.Clock;
+import pt.isel.poo.puzzle.anim.Easing;
+import pt.isel.poo.puzzle.anim.FrameListener;
+import pt.isel.poo.puzzle.model.DirtyRegion;
+import pt.isel.poo.puzzle.model.GestureInterpreter;
+import pt.isel.poo.puzzle.model.GridGeometry;
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.PorterDuff;
 import android.graphics.Rect;
 import android.util.AttributeSet;
 import android.view.MotionEvent;
@@ -17,7 +24,9 @@ import android.view.View;
 /**
  * A specialization of View to manage a panel of <b>tiles</b>.</br> 
  * Each tile is a square that implements the "Tile" interface to draw.</br> 
- * The panel dimensions are defined by the attributes "app:widthTiles" and "app:heightTiles" in multiple layout in the tiles.
+ * The panel dimensions are defined by the attributes "app:widthTiles" and "app:heightTiles" in multiple layout in the tiles.</br>
+ * The tiles and the grid are kept in an offscreen bitmap where only the changed cells are redrawn,
+ * so each frame draws that bitmap and the animations in progress (also with hardware acceleration).
  * @author Palex
  * @see Tile
  */
@@ -62,7 +71,7 @@ public class TilePanel extends View {
 		 * This method must call "setTile" or "FloatTile" of TilePanel to change the tiles positions.
 		 * @param xFrom x coordinate of the tile that was trying to drag
 		 * @param yFrom y coordinate of the tile that was trying to drag
-		 * @param xTo x coordinate to drag to
+		 * @param xTo x coordinate to drag to (a fast swipe in line can span more than one tile)
 		 * @param yTo y coordinate to drag to
 		 * @param ev MotionEvent in ACTION_UP moment
 		 * @return true if it has effect
@@ -74,11 +83,35 @@ public class TilePanel extends View {
 	private Tile[] tiles;				// The tiles.
 	private Paint paint = new Paint();  // To draw some parts.
 
+	private GridGeometry geo;			// Position of tiles in pixels.
+	private DirtyRegion updated = new DirtyRegion(); // Cells changed in the current update
+	private int updates;				// Nesting of beginUpdate() calls
+	private Bitmap cache;				// Offscreen image of the tiles and grid (null if no size)
+	private Canvas cacheCanvas;			// To draw in cache
+	private DirtyRegion dirty = new DirtyRegion();	// Cells to redraw in cache
+	private int cellsDrawn;				// Cells drawn in last frame.
+	private long frames;				// Number of frames drawn.
 	private int wt, ht;					// width and height of each tile.
 	private int xInit, yInit, xEnd, yEnd;	// Bounds of panel.
 
 	public int getWidthInTiles()  	{ return xTiles; }	
 	public int getHeightInTiles() 	{ return yTiles; }
+	/**
+	 * @return number of cells redrawn in the offscreen image in the last frame (the others are not drawn) 
+	 */
+	public int getCellsDrawn()		{ return cellsDrawn; }
+	/**
+	 * @return number of frames drawn
+	 */
+	public long getFramesDrawn()	{ return frames; }
+
+	private FrameListener frameListener;	// Instrumentation of frames (null if disabled)
+
+	/**
+	 * Sets the listener of the timing of frames and touches (null to disable).
+	 * @see pt.isel.poo.puzzle.anim.FrameStats
+	 */
+	public void setFrameListener(FrameListener l) { frameListener = l; }
 
 	/**
 	 * Constructor called in layout inflate
@@ -107,6 +140,9 @@ public class TilePanel extends View {
 		paint.setColor(a.getColor(R.styleable.TilePanel_background, Color.DKGRAY));
         a.recycle();
   	    tiles = new Tile[xTiles*yTiles];
+  	    geo = new GridGeometry(xTiles, yTiles);
+  	    anims = new Animations(xTiles, yTiles, Clock.SYSTEM);
+  	    gestures = new GestureInterpreter(geo, gestureListener);
 	}
 
     /**
@@ -115,6 +151,8 @@ public class TilePanel extends View {
 	public void setSize(int w, int h) {
 		xTiles = w; yTiles = h;
   	    tiles = new Tile[xTiles*yTiles];
+  	    geo.setTiles(w, h);
+  	    anims.resize(w, h);
 		resize(getWidth(),getHeight());
 	}
 	
@@ -128,7 +166,15 @@ public class TilePanel extends View {
 	  for(int y=0, idx=0 ; y<yTiles ; ++y)
 		for(int x=0 ; x<xTiles ; ++x, ++idx)
 			tiles[idx] = t[x][y];
-	  invalidate();
+	  anims.clear();
+	  invalidateTiles();
+	}
+
+	/**
+	 * Redraws all the tiles. To call when the presentation of the tiles changes.
+	 */
+	public void invalidateTiles() {
+	  invalidateArea(0, 0, xTiles-1, yTiles-1);
 	}
 	
 	/**
@@ -140,7 +186,8 @@ public class TilePanel extends View {
 	 */
 	public void setTile(int x, int y, Tile t) {
 		setTileNoInvalidate(x,y,t);
-		invalidate(tileRect(x, y));
+		anims.cancel(y*xTiles+x);
+		invalidateCells(x, y, x, y);
 	}
 	
 	private void setTileNoInvalidate(int x, int y, Tile t) {
@@ -174,38 +221,85 @@ public class TilePanel extends View {
 	// Called to draw the View
 	@Override
 	protected void onDraw(Canvas canvas) {
-	  if (isInEditMode()) { // In layout editor
+	  FrameListener fl = frameListener;
+	  long start = fl!=null ? System.nanoTime() : 0;
+	  if (isInEditMode() || cache==null) { // In layout editor (or without size)
 		  drawGrid(canvas);		  
 	  } else {
-		  Tile t;
-		  for(int y=0, idx=0 ; y<yTiles ; ++y)
-			for(int x=0 ; x<xTiles ; ++x, ++idx)
-			   if ((t = tiles[idx])!=null) 
-				 drawTile(canvas, t, x, y); // draw each tile
-		  drawGrid(canvas);	// draw grid lines
+		  anims.update();	// Computes positions and removes finished animations
+		  if (!animArea.isEmpty()) // Cells of the animations of the last frame (may be finished)
+			  dirty.add(animArea.getLeft(), animArea.getTop(), animArea.getRight(), animArea.getBottom());
+		  drawCells();	// Only the changed cells in cache
+		  canvas.drawBitmap(cache, 0, 0, null);
 		  drawAnims(canvas); // draw animations in progress
+		  ++frames;
+		  if (fl!=null) fl.onFrame(start, System.nanoTime(), anims.size());
 	  }
 	}
 
-	// Draw each tile. Called by onDraw()
+	// Draw in cache the cells changed. Called by onDraw()
+	private void drawCells() {
+	  cellsDrawn = 0;
+	  if (dirty.isEmpty()) return;
+	  for(int y=dirty.getTop() ; y<=dirty.getBottom() ; ++y)
+		for(int x=dirty.getLeft(), idx=y*xTiles+x ; x<=dirty.getRight() ; ++x, ++idx) {
+		  drawTile(cacheCanvas, tiles[idx], x, y); // draw each tile
+		  ++cellsDrawn;
+		}
+	  dirty.clear();
+	}
+
+	/**
+	 * Starts a batch of changes of tiles: the changed area is invalidated once in endUpdate(),
+	 * and the animations started are one group (start together).
+	 * Can be nested.
+	 */
+	public void beginUpdate() {
+		if (updates++ == 0) anims.beginGroup();
+	}
+
+	/**
+	 * Ends a batch of changes started by beginUpdate()
+	 */
+	public void endUpdate() {
+		if (--updates > 0) return;
+		updates = 0;
+		anims.endGroup();
+		if (updated.isEmpty()) return;
+		invalidateArea(updated.getLeft(), updated.getTop(), updated.getRight(), updated.getBottom());
+		updated.clear();
+	}
+
+	// Marks the cells between (x0,y0) and (x1,y1) as changed and invalidates that area.
+	private void invalidateCells(int x0, int y0, int x1, int y1) {
+		if (updates>0) updated.add(x0, y0, x1, y1);	// Invalidated in endUpdate
+		else invalidateArea(Math.min(x0,x1), Math.min(y0,y1), Math.max(x0,x1), Math.max(y0,y1));
+	}
+
+	// Invalidates the area of the cells between (x0,y0) and (x1,y1), with x0<=x1 and y0<=y1
+	private void invalidateArea(int x0, int y0, int x1, int y1) {
+		dirty.add(x0, y0, x1, y1);	// To redraw in cache
+		invalidate(xInit+x0*wt, yInit+y0*ht, xInit+(x1+1)*wt+1, yInit+(y1+1)*ht+1);
+	}
+
+	// Draw each tile in cache. Called by drawCells()
 	private void drawTile(Canvas canvas, Tile t, int x, int y) {
 	  canvas.save();			// Save canvas context
 	  Rect r = tileRect(x, y);	
 	  canvas.clipRect(r);				// Clipping area of tile
+	  canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR); // Erase the previous tile
 	  canvas.translate(r.left,r.top);	// Origin (0,0) to call draw
-	  if (isAnim(t))
-		  canvas.drawColor(Color.TRANSPARENT); // In move? Draw place holder transparent 
-	  else
+	  if (t!=null && !anims.isAnimating(y*xTiles+x)) // In move? Leave place holder transparent
 		  t.draw(canvas,r.width(),r.height()); // Draw the tile
 	  canvas.restore();			// Restore canvas context
 	}
 
-	// Draw grid lines. Called by onDraw()
+	// Draw grid lines. Called by onDraw() in layout editor and by resize() in cache
 	private void drawGrid(Canvas canvas) {
 	  for(int x=xInit ; x<=xEnd ; x+=wt )
-		canvas.drawLine(x, yInit, x, yEnd, paint);
+		  canvas.drawLine(x, yInit, x, yEnd, paint);
 	  for(int y=yInit ; y<=yEnd ; y+=ht )
-		canvas.drawLine(xInit, y, xEnd, y, paint);
+		  canvas.drawLine(xInit, y, xEnd, y, paint);
 	}
 
 	// Called by layout manager if size changed. 
@@ -217,16 +311,23 @@ public class TilePanel extends View {
 
 	// Calculate each tile dimensions and other bounds of internal panel 
 	private void resize(int w, int h) {
-		w -=1; h -=-1;
-		wt = w/xTiles; ht = h/yTiles;
-		ht = Math.min(wt, ht); wt = ht;
-		xInit = (w%xTiles)/2; yInit = (h%yTiles)/2;
-		xEnd = xInit+wt*xTiles; yEnd = yInit+ht*yTiles;
+		geo.resize(w, h);
+		wt = geo.getTileWidth(); ht = geo.getTileHeight();
+		xInit = geo.getLeft(); yInit = geo.getTop();
+		xEnd = geo.getRight(); yEnd = geo.getBottom();
+		if (cache!=null) cache.recycle();
+		cache = null; cacheCanvas = null;
+		dirty.clear(); animArea.clear();	// Cells of the old dimensions
+		if (w<=0 || h<=0 || isInEditMode()) return;
+		cache = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+		cacheCanvas = new Canvas(cache);
+		drawGrid(cacheCanvas);
+		invalidateTiles();	// All tiles drawn in the next frame
 	}
 
-	private int xTouch, yTouch;	// x and y of last event  
 	private Tile selected;		// last tile selected 
-	private int pointerId;		// pointer of last event
+	private MotionEvent event;	// event being interpreted
+	private long touchTime;		// time when the event was received (only with frame listener)
 	
 	// The listener of tile touches. 
 	private TouchListener listenner;
@@ -235,50 +336,64 @@ public class TilePanel extends View {
 	 * Sets the listener for tile touches  
 	 */
 	public void setTouchListener(TouchListener l) {	listenner = l; }
+
+	// Interprets the touches in tiles (created in parseAttrs)
+	private GestureInterpreter gestures;
+
+	// Receives the gestures and calls the listener of tile touches
+	private final GestureInterpreter.Listener gestureListener = new GestureInterpreter.Listener() {
+		@Override
+		public void onPress(int xt, int yt) { selectTouched(xt, yt); }
+		@Override
+		public void onRelease(int xt, int yt) { unselectTouched(xt, yt); }
+		@Override
+		public boolean onClick(int xt, int yt) {
+			if (selected!=getTile(xt,yt) || listenner==null) return false;
+			return touched(listenner.onClick(xt, yt, event));
+		}
+		@Override
+		public boolean onDrag(int xFrom, int yFrom, int xTo, int yTo) {
+			if (listenner==null) return false;
+			return touched(listenner.onDrag(xFrom, yFrom, xTo, yTo, event));
+		}
+	};
 	
 	@Override
 	public boolean onTouchEvent(MotionEvent ev) {
-		int x = (int) ev.getX(), y = (int) ev.getY();
-		if (x < xInit || x >= xEnd || y < yInit || y >= yEnd) return false;
-		int xt = (x-xInit)/wt;
-		int yt = (y-yInit)/ht;
-		switch (ev.getAction()) {
-		case MotionEvent.ACTION_DOWN:
-			//System.out.printf("TOUCH DOWN (%d,%d) [%s,%d] id=%d\n",xt,yt,x,y,ev.getPointerId(0));
-			pointerId=ev.getPointerId(0);
-			selectTouched(xt, yt);
-			xTouch = xt; yTouch = yt;
-			return true;
-		case MotionEvent.ACTION_UP:
-			if (selected==getTile(xt,yt) && listenner!=null && xTouch==xt && yTouch==yt)
-				listenner.onClick(xt, yt, ev);
-			//System.out.printf("TOUCH UP (%d,%d) [%s,%d] id=%d\n",xt,yt,x,y,ev.getPointerId(0));
-			unselectTouched();
-			return true;
-		case MotionEvent.ACTION_MOVE:
-			if (xt!=xTouch || yt!=yTouch) {
-				//System.out.printf("TOUCH MOVE (%d,%d) id=%d\n",xt,yt,ev.getPointerId(0));
-				unselectTouched();
-				if (listenner!=null && ev.getPointerId(0)==pointerId) 
-					listenner.onDrag(xTouch, yTouch, xt, yt, ev);
-				xTouch = xt; yTouch = yt;
-				return true;
-			} 
+		if (frameListener!=null) touchTime = System.nanoTime();
+		event = ev;
+		beginUpdate();
+		boolean res = false;
+		int action = ev.getAction(), pointer = ev.getPointerId(0);
+		if (action==MotionEvent.ACTION_MOVE) {	// Samples since the last event, coalesced
+			gestures.beginBatch();
+			for(int h=0, n=ev.getHistorySize() ; h<n ; ++h)
+				res |= gestures.onTouch(action, (int) ev.getHistoricalX(0, h), (int) ev.getHistoricalY(0, h), pointer, ev.getHistoricalEventTime(h));
 		}
-	    return false;
+		res |= gestures.onTouch(action, (int) ev.getX(), (int) ev.getY(), pointer, ev.getEventTime());
+		gestures.endBatch();
+		endUpdate();
+		event = null;
+	    return res;
 	}
 	
+	// Notifies the frame listener of a touch with effect
+	private boolean touched(boolean effect) {
+		if (effect && frameListener!=null) frameListener.onTouch(touchTime);
+		return effect;
+	}
+
 	private void selectTouched(int xt, int yt) {
 		Tile tile = getTile(xt, yt);
 		if (tile!=null && tile.setSelect(true))
-		  invalidate(tileRect(xt,yt));
+		  invalidateArea(xt,yt,xt,yt);
 		selected = tile;
 	}
 
-	private void unselectTouched() {
+	private void unselectTouched(int xt, int yt) {
 		if (selected==null) return; 
 		if (selected.setSelect(false)) 
-		  invalidate(tileRect(xTouch,yTouch));
+		  invalidateArea(xt,yt,xt,yt);
 		selected = null;
 	}
 
@@ -286,71 +401,51 @@ public class TilePanel extends View {
 	private Rect rect = new Rect();
 	
 	private Rect tileRect(int xt, int yt) {
-		int x = xInit + xt*wt +1;
-		int y = yInit + yt*ht +1;
+		int x = geo.tileLeft(xt);
+		int y = geo.tileTop(yt);
 		rect.set(x,y, x+wt-1,y+ht-1);
 		return rect;
 	}
 
 	/**	 ************* Animation part ******************* */
 	
-	// List of tile animations
-	private LinkedList<AnimTile> anims = new LinkedList<AnimTile>();
-
-	// Time (in milisecs) for next step of animations
-	private long nextTime;
-	private static final int STEP_TIME = 50; // Time interval for steps of animations  
-
-	// Returns true if the tile is animated
-	private boolean isAnim(Tile tile) {
-	   if (anims.size()==0) return false;
-	   for(AnimTile as : anims)
-		   if (as.tile==tile) return true;
-	   return false;
-	}
-	
-	// Draw animations. Called by onDraw()
+	// Tile animations (moving to cells)
+	private Animations anims;
+
+	public static final int FRAME_TIME = 16; // Time interval between frames of animations  
+
+	/**
+	 * Sets the curve of the animations
+	 */
+	public void setEasing(Easing e) { anims.setEasing(e); }
+
+	// Draw animations. Called by onDraw() after anims.update()
 	private void drawAnims(Canvas canvas) {
-	   if (anims.size()==0) return;  				// No animations?
-	   Iterator<AnimTile> i = anims.iterator();   	// Get iterator
-	   while( i.hasNext() ) {						
-		   AnimTile a = i.next();					// Next animation
-		   a.stepDraw(canvas);						// draw in next position
-		   if (a.steps==0) 							// Last step?
-			   i.remove();							// Remove from animation list 
+	   DirtyRegion area = animArea;		// Cells crossed by the animations
+	   area.clear();
+	   int n = anims.size();
+	   if (n==0) return;  				// No animations?
+	   for(int i=0 ; i<n ; ++i) {
+		   int c = anims.getCell(i);
+		   float sx = anims.getStartX(i), sy = anims.getStartY(i);
+		   area.add((int) sx, (int) sy, c%xTiles, c/xTiles);
+		   area.add((int) Math.ceil(sx), (int) Math.ceil(sy));
+		   Tile tile = tiles[c];
+		   if (tile==null) continue;
+		   int x = xInit + (int)(anims.getX(i)*wt) +1;	// draw in current position
+		   int y = yInit + (int)(anims.getY(i)*ht) +1;
+		   canvas.save();
+		   canvas.clipRect(x,y,x+wt-1,y+ht-1);
+		   canvas.translate(x,y);
+		   tile.draw(canvas,wt-1,ht-1);
+		   canvas.restore();
 	   }
-	   nextTime += STEP_TIME;						// Time for next animation
-	   long remain = nextTime - System.currentTimeMillis();
-	   if (remain<0) invalidate();					// draw now 
-	   else postInvalidateDelayed(remain);			// draw past remain time
+	   // Next frame only in the area of animations
+	   postInvalidateDelayed(FRAME_TIME, xInit+area.getLeft()*wt, yInit+area.getTop()*ht, 
+			   xInit+(area.getRight()+1)*wt+1, yInit+(area.getBottom()+1)*ht+1);
 	}
 
-	// Information for each animation
-	private class AnimTile {
-		Tile tile;	// tile to animate
-		int x,y;    // current position
-		int steps;  // steps to final position
-		int fx,fy;  // final position
-		
-		AnimTile(int xF, int yF, int xTo, int yTo, int tm) {
-			tile = getTile(xF, yF);
-			Rect r = tileRect(xF, yF);
-			x = r.left; y=r.top;
-			steps = tm/STEP_TIME;
-			r = tileRect(xTo, yTo);
-			fx = r.left; fy = r.top;
-		}
-		void stepDraw(Canvas cv) {
-			x += (fx-x)/steps;
-			y += (fy-y)/steps;
-			--steps;
-			cv.save();
-			cv.clipRect(x,y,x+wt,y+ht);
-			cv.translate(x,y);
-			tile.draw(cv,wt-1,ht-1);
-			cv.restore();
-		}
-	}
+	private DirtyRegion animArea = new DirtyRegion(); // Redrawn in cache in the next frame
 
 	/**
 	 *  Animate the tile from one position to another.
@@ -362,10 +457,7 @@ public class TilePanel extends View {
 	 */
 	public void FloatTile(int xFrom, int yFrom, int xTo, int yTo, int time) {
 		setTileNoInvalidate(xTo,yTo, getTile(xFrom,yFrom));
-		anims.add(new AnimTile(xFrom, yFrom, xTo, yTo, time));
-		if (anims.size()==1) {
-			postInvalidateDelayed(STEP_TIME);
-			nextTime = System.currentTimeMillis()+STEP_TIME;
-		}
+		anims.start(yFrom*xTiles+xFrom, yTo*xTiles+xTo, time);
+		invalidateCells(xFrom, yFrom, xTo, yTo);
 	}
 }
@@ -0,0 +1,199 @@
+package pt.isel.poo.puzzle.anim;
+
+import java.util.Arrays;
+
+/**
+ * Store of tile animations between cells, without any dependency of Android.</br>
+ * The animations are kept in parallel arrays (reused, only grow), so starting
+ * and finishing animations creates no objects. Each animation is identified by the
+ * destination cell, with an index by cell to know in O(1) if a cell is animating.</br>
+ * The position is computed from the time elapsed since the start, so late frames
+ * do not slow down the animation. Positions are in cells (fractional), 
+ * the View converts them to pixels.
+ * @author Palex
+ */
+public class Animations {
+
+	private final Clock clock;
+	private Easing easing = Easing.EASE_OUT;
+	private int width;			// Board width in cells
+	private int[] slotOf;		// Slot of the animation to each destination cell (-1 none)
+
+	private int size;			// Number of active animations 
+	private int[] cell;			// Destination cell of each animation
+	private float[] x0, y0;		// Start position (in cells)
+	private long[] start;		// Start time
+	private int[] duration;		// Duration in milliseconds
+	private float[] x, y;		// Current position (computed in update)
+	private long groupTime = -1;	// Start time of the animations of the group (-1 if no group)
+
+	/**
+	 * @param width board width in cells
+	 * @param height board height in cells
+	 * @param clock source of time
+	 */
+	public Animations(int width, int height, Clock clock) {
+		this.clock = clock;
+		resize(width, height);
+		grow(8);
+	}
+
+	/**
+	 * Changes the board dimensions. Cancels all animations.
+	 */
+	public void resize(int width, int height) {
+		this.width = width;
+		slotOf = new int[width*height];
+		Arrays.fill(slotOf, -1);
+		size = 0;
+	}
+
+	public void setEasing(Easing e) { easing = e; }
+
+	public Clock getClock() { return clock; }
+
+	/**
+	 * @return number of active animations
+	 */
+	public int size() { return size; }
+
+	/**
+	 * @return true if there is a tile moving to the cell
+	 */
+	public boolean isAnimating(int c) { return slotOf[c]>=0; }
+
+	/**
+	 * Starts a group of animations: all animations started until endGroup() have the same start time,
+	 * so the tiles of a line move together.
+	 */
+	public void beginGroup() { groupTime = clock.now(); }
+
+	/**
+	 * Ends the group of animations
+	 */
+	public void endGroup() { groupTime = -1; }
+
+	/**
+	 * Starts the animation of a tile. If the tile is still moving to the cell "from",
+	 * the new animation starts in its current position.
+	 * @param from the cell where the tile starts
+	 * @param to destination cell (where the tile is in the board)
+	 * @param time duration in milliseconds
+	 */
+	public void start(int from, int to, int time) {
+		long now = groupTime>=0 ? groupTime : clock.now();
+		float sx = from%width, sy = from/width;
+		int prev = slotOf[from];
+		if (prev>=0) {	// Continues from current position
+			position(prev, now);
+			sx = x[prev]; sy = y[prev];
+			remove(prev);
+		}
+		cancel(to);
+		if (size==cell.length) grow(size*2);
+		int s = size++;
+		cell[s] = to;
+		x0[s] = sx; y0[s] = sy;
+		start[s] = now;
+		duration[s] = Math.max(time, 1);
+		x[s] = sx; y[s] = sy;
+		slotOf[to] = s;
+	}
+
+	/**
+	 * Cancels the animation to the cell, if any
+	 */
+	public void cancel(int c) {
+		int s = slotOf[c];
+		if (s>=0) remove(s);
+	}
+
+	/**
+	 * Cancels all animations
+	 */
+	public void clear() {
+		for(int s=0 ; s<size ; ++s) slotOf[cell[s]] = -1;
+		size = 0;
+	}
+
+	/**
+	 * Computes the current position of all animations and removes the finished.
+	 * @return number of animations still active
+	 */
+	public int update() {
+		long now = clock.now();
+		for(int s=0 ; s<size ; ) 
+			if (now-start[s] >= duration[s]) remove(s); // The last is moved to s
+			else position(s++, now);
+		return size;
+	}
+
+	/**
+	 * @param i index of the animation (0..size()-1)
+	 * @return destination cell
+	 */
+	public int getCell(int i) { return cell[i]; }
+
+	/**
+	 * @return start column (fractional) of the animation i
+	 */
+	public float getStartX(int i) { return x0[i]; }
+
+	/**
+	 * @return start line (fractional) of the animation i
+	 */
+	public float getStartY(int i) { return y0[i]; }
+
+	/**
+	 * @return current column (fractional) of the animation i
+	 */
+	public float getX(int i) { return x[i]; }
+
+	/**
+	 * @return current line (fractional) of the animation i
+	 */
+	public float getY(int i) { return y[i]; }
+
+	// Computes the position in time "now"
+	private void position(int s, long now) {
+		float t = Math.min(1f, (float) (now-start[s]) / duration[s]);
+		float f = easing.ease(t);
+		int c = cell[s];
+		x[s] = x0[s] + (c%width - x0[s])*f;
+		y[s] = y0[s] + (c/width - y0[s])*f;
+	}
+
+	// Removes the slot s, moving the last slot to s
+	private void remove(int s) {
+		slotOf[cell[s]] = -1;
+		int last = --size;
+		if (s!=last) {
+			cell[s] = cell[last]; x0[s] = x0[last]; y0[s] = y0[last];
+			start[s] = start[last]; duration[s] = duration[last];
+			x[s] = x[last]; y[s] = y[last];
+			slotOf[cell[s]] = s;
+		}
+	}
+
+	private void grow(int capacity) {
+		cell = copy(cell, capacity);
+		x0 = copy(x0, capacity); y0 = copy(y0, capacity);
+		x = copy(x, capacity); y = copy(y, capacity);
+		duration = copy(duration, capacity);
+		long[] st = new long[capacity];
+		if (start!=null) System.arraycopy(start, 0, st, 0, size);
+		start = st;
+	}
+
+	private int[] copy(int[] a, int capacity) {
+		int[] r = new int[capacity];
+		if (a!=null) System.arraycopy(a, 0, r, 0, size);
+		return r;
+	}
+
+	private float[] copy(float[] a, int capacity) {
+		float[] r = new float[capacity];
+		if (a!=null) System.arraycopy(a, 0, r, 0, size);
+		return r;
+	}
+}
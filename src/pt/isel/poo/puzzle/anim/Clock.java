@@ -0,0 +1,21 @@
+package pt.isel.poo.puzzle.anim;
+
+/**
+ * Source of time for animations. 
+ * Can be replaced by a fake clock to run animations outside Android (in tests or benchmarks).
+ * @author Palex
+ */
+public interface Clock {
+	/**
+	 * @return current time in milliseconds (only differences are used)
+	 */
+	long now();
+
+	/**
+	 * Monotonic clock of the system
+	 */
+	Clock SYSTEM = new Clock() {
+		@Override
+		public long now() { return System.nanoTime()/1000000; }
+	};
+}
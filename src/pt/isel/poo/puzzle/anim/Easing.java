@@ -0,0 +1,28 @@
+package pt.isel.poo.puzzle.anim;
+
+/**
+ * Easing curve of an animation.
+ * @author Palex
+ */
+public interface Easing {
+	/**
+	 * @param t fraction of time elapsed (0..1)
+	 * @return fraction of the path done (0 at t=0 and 1 at t=1)
+	 */
+	float ease(float t);
+
+	/** Constant speed */
+	Easing LINEAR = new Easing() {
+		@Override public float ease(float t) { return t; }
+	};
+
+	/** Starts fast and slows down at end */
+	Easing EASE_OUT = new Easing() {
+		@Override public float ease(float t) { return t*(2-t); }
+	};
+
+	/** Accelerates at start and slows down at end */
+	Easing EASE_IN_OUT = new Easing() {
+		@Override public float ease(float t) { return t*t*(3-2*t); }
+	};
+}
@@ -0,0 +1,23 @@
+package pt.isel.poo.puzzle.anim;
+
+/**
+ * Receives the timing of each frame drawn and of each touch with effect.</br>
+ * Called in the UI thread, so the implementations must be fast and not create objects.
+ * Without listener the View does not read the time.
+ * @author Palex
+ * @see FrameStats
+ */
+public interface FrameListener {
+	/**
+	 * When a touch changed the tiles (a click or a drag with effect)
+	 * @param time when the event was received (System.nanoTime)
+	 */
+	void onTouch(long time);
+	/**
+	 * When a frame was drawn
+	 * @param start time when the draw started (System.nanoTime)
+	 * @param end time when the draw ended (System.nanoTime)
+	 * @param animations number of animations active after the frame
+	 */
+	void onFrame(long start, long end, int animations);
+}
@@ -0,0 +1,149 @@
+package pt.isel.poo.puzzle.anim;
+
+/**
+ * Statistics of the frames drawn, without any dependency of Android.</br>
+ * Keeps histograms of the draw durations and of the latency from a touch to the end
+ * of the first frame drawn after it, and counts the late frames of animations:
+ * while animating a frame is expected each frame time, so a longer interval is a late
+ * frame and each frame time missed is a dropped frame.</br>
+ * The histograms have fixed buckets (doubling limits), so recording creates no objects.
+ * The snapshot can be taken from any thread.
+ * @author Palex
+ */
+public class FrameStats implements FrameListener {
+
+	/**
+	 * Upper limits of the buckets in microseconds (the last bucket has no limit)
+	 */
+	public static final int[] LIMITS = { 500, 1000, 2000, 4000, 8000, 16000, 32000, 64000, 128000 };
+
+	private final long frameNanos;	// Expected interval between frames of animations
+	private final long[] draws = new long[LIMITS.length+1];		// Histogram of draw durations
+	private final long[] latencies = new long[LIMITS.length+1];	// Histogram of touch latencies
+	private long frames, late, dropped, touches;
+	private long drawTotal, drawMax, latencyTotal, latencyMax;	// In nanoseconds
+	private long lastStart;		// Start of the last frame with animations (0 if none)
+	private long touchTime;		// Time of the touch not yet drawn (0 if none)
+	private int animations, maxAnimations;
+
+	/**
+	 * @param frameTime interval between frames of animations in milliseconds
+	 */
+	public FrameStats(int frameTime) {
+		if (frameTime<=0) throw new IllegalArgumentException("Invalid frame time");
+		frameNanos = frameTime*1000000L;
+	}
+
+	@Override
+	public synchronized void onTouch(long time) {
+		if (touchTime==0) touchTime = time;	// The first touch not drawn
+	}
+
+	@Override
+	public synchronized void onFrame(long start, long end, int animations) {
+		long d = end-start;
+		++draws[bucket(d)];
+		++frames;
+		drawTotal += d;
+		if (d>drawMax) drawMax = d;
+		if (lastStart!=0) {		// A frame was expected
+			long interval = start-lastStart;
+			if (interval > frameNanos*3/2) {
+				++late;
+				dropped += interval/frameNanos - 1;
+			}
+		}
+		lastStart = animations>0 ? start : 0;
+		if (touchTime!=0) {
+			long l = end-touchTime;
+			++latencies[bucket(l)];
+			++touches;
+			latencyTotal += l;
+			if (l>latencyMax) latencyMax = l;
+			touchTime = 0;
+		}
+		this.animations = animations;
+		if (animations>maxAnimations) maxAnimations = animations;
+	}
+
+	private static int bucket(long nanos) {
+		long us = nanos/1000;
+		int i = 0;
+		while (i<LIMITS.length && us>=LIMITS[i]) ++i;
+		return i;
+	}
+
+	/**
+	 * Clears all the statistics
+	 */
+	public synchronized void reset() {
+		for(int i=0 ; i<draws.length ; ++i) draws[i] = latencies[i] = 0;
+		frames = late = dropped = touches = 0;
+		drawTotal = drawMax = latencyTotal = latencyMax = 0;
+		lastStart = touchTime = 0;
+		animations = maxAnimations = 0;
+	}
+
+	/**
+	 * @return a copy of the current statistics
+	 */
+	public synchronized Snapshot snapshot() {
+		return new Snapshot(this);
+	}
+
+	/**
+	 * Statistics in one moment. The toString() is a readable dump.
+	 */
+	public static class Snapshot {
+		public final long frames, late, dropped, touches;
+		public final long drawTotal, drawMax, latencyTotal, latencyMax;	// In nanoseconds
+		public final int animations, maxAnimations;
+		private final long[] draws, latencies;
+
+		private Snapshot(FrameStats s) {
+			frames = s.frames; late = s.late; dropped = s.dropped; touches = s.touches;
+			drawTotal = s.drawTotal; drawMax = s.drawMax;
+			latencyTotal = s.latencyTotal; latencyMax = s.latencyMax;
+			animations = s.animations; maxAnimations = s.maxAnimations;
+			draws = s.draws.clone(); latencies = s.latencies.clone();
+		}
+
+		/**
+		 * @return number of frames with draw duration in the bucket (see LIMITS)
+		 */
+		public long getDraws(int bucket)		{ return draws[bucket]; }
+		/**
+		 * @return number of touches with latency in the bucket (see LIMITS)
+		 */
+		public long getLatencies(int bucket)	{ return latencies[bucket]; }
+
+		/**
+		 * @return average draw duration in milliseconds
+		 */
+		public double getDrawAverage()		{ return frames==0 ? 0 : drawTotal/1e6/frames; }
+		/**
+		 * @return average touch latency in milliseconds
+		 */
+		public double getLatencyAverage()	{ return touches==0 ? 0 : latencyTotal/1e6/touches; }
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append(String.format("frames=%d late=%d dropped=%d animations=%d (max %d)\n",
+					frames, late, dropped, animations, maxAnimations));
+			sb.append(String.format("draw: avg=%.3fms max=%.3fms\n", getDrawAverage(), drawMax/1e6));
+			append(sb, draws);
+			sb.append(String.format("touch to frame: count=%d avg=%.3fms max=%.3fms\n", touches, getLatencyAverage(), latencyMax/1e6));
+			append(sb, latencies);
+			return sb.toString();
+		}
+
+		private static void append(StringBuilder sb, long[] histogram) {
+			for(int i=0 ; i<histogram.length ; ++i) {
+				if (histogram[i]==0) continue;
+				if (i<LIMITS.length) sb.append(String.format("  <%6.1fms %d\n", LIMITS[i]/1000.0, histogram[i]));
+				else sb.append(String.format("  >=%5.1fms %d\n", LIMITS[i-1]/1000.0, histogram[i]));
+			}
+		}
+	}
+}
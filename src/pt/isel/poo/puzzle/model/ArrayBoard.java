@@ -0,0 +1,118 @@
+package pt.isel.poo.puzzle.model;
+
+import pt.isel.poo.puzzle.Direction;
+
+/**
+ * Board implemented with an array of tiles (one short for each cell).</br>
+ * The position of the hole and the number of misplaced tiles are updated in each move,
+ * so finding the hole and verifying if the puzzle is solved are O(1).
+ * @author Palex
+ */
+public class ArrayBoard implements Board {
+
+	private final int width, height;	// Board dimensions in cells
+	private final int goalHole;			// Home cell of the hole
+	private final MoveTable moves;		// Adjacent cells of each cell
+	private final short[] cells;		// The tile in each cell
+	private int hole;					// Current cell of the hole
+	private int misplaced;				// Number of tiles out of the home cell
+	private boolean[] seen;				// Auxiliary array to validate cells
+
+	/**
+	 * Creates a solved board
+	 * @param width number of columns
+	 * @param height number of lines
+	 * @param goalHole cell of the hole in solved board
+	 */
+	public ArrayBoard(int width, int height, int goalHole) {
+		if (width<1 || height<1 || width*height>Short.MAX_VALUE || goalHole<0 || goalHole>=width*height)
+			throw new IllegalArgumentException();
+		this.width = width; this.height = height;
+		this.goalHole = goalHole;
+		moves = MoveTable.get(width, height);
+		cells = new short[width*height];
+		reset();
+	}
+
+	private ArrayBoard(ArrayBoard b) {
+		width = b.width; height = b.height; goalHole = b.goalHole;
+		moves = b.moves;
+		cells = b.cells.clone();
+		hole = b.hole; misplaced = b.misplaced;
+	}
+
+	@Override public int getWidth()		{ return width; }
+	@Override public int getHeight()	{ return height; }
+	@Override public int getSize()		{ return cells.length; }
+	@Override public int getGoalHole()	{ return goalHole; }
+	@Override public int getHole()		{ return hole; }
+	@Override public int getTile(int cell) { return cells[cell]; }
+	@Override public int getMisplaced()	{ return misplaced; }
+	@Override public boolean isSolved()	{ return misplaced==0; }
+
+	@Override
+	public boolean canMoveHole(Direction d) {
+		return moves.target(hole, d.ordinal()) >= 0;
+	}
+
+	@Override
+	public boolean moveHole(Direction d) {
+		int cell = moves.target(hole, d.ordinal());
+		if (cell<0) return false;
+		swapHole(cell);
+		return true;
+	}
+
+	// Moves the tile in cell to the hole. The cell must be adjacent to the hole.
+	private void swapHole(int cell) {
+		int t = cells[cell];
+		if (t==cell) ++misplaced;  	// Leaves the home cell
+		if (t==hole) --misplaced;	// Enters in the home cell
+		cells[hole] = (short) t;
+		cells[cell] = (short) goalHole;
+		hole = cell;
+	}
+
+	@Override
+	public int slide(int cell) {
+		int x = cell%width, y = cell/width;
+		int hx = hole%width, hy = hole/width;
+		int step;	// Offset of each hole step in the cells array
+		if (y==hy && x!=hx) step = x>hx ? 1 : -1;
+		else if (x==hx && y!=hy) step = y>hy ? width : -width;
+		else return 0; 	// Not in line or is the hole
+		int n = 0;
+		do { swapHole(hole+step); ++n; } while (hole!=cell);
+		return n;
+	}
+
+	@Override
+	public void reset() {
+		for(int i=0 ; i<cells.length ; ++i)
+			cells[i] = (short) i;
+		hole = goalHole;
+		misplaced = 0;
+	}
+
+	@Override
+	public void getCells(int[] dst) {
+		for(int i=0 ; i<cells.length ; ++i)
+			dst[i] = cells[i];
+	}
+
+	@Override
+	public void setCells(int[] src) {
+		if (src==null || src.length!=cells.length) throw new IllegalArgumentException();
+		if (seen==null) seen = new boolean[cells.length];
+		if (!Boards.isPermutation(src, seen)) throw new IllegalArgumentException();
+		misplaced = 0;
+		for(int i=0 ; i<cells.length ; ++i) {
+			int t = cells[i] = (short) src[i];
+			if (t==goalHole) hole = i;
+			else if (t!=i) ++misplaced;
+		}
+	}
+
+	@Override
+	public Board copy() { return new ArrayBoard(this); }
+}
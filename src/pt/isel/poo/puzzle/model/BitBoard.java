@@ -0,0 +1,182 @@
+package pt.isel.poo.puzzle.model;
+
+import pt.isel.poo.puzzle.Direction;
+
+/**
+ * Board of 16 cells or less, stored in one long with 4 bits for each cell.</br>
+ * The cell i is in bits 4*i..4*i+3. Moving the hole swaps two nibbles with a XOR,
+ * and sliding a line of tiles is a shift of the masked nibbles between the hole and the cell.
+ * The solved test compares with the solved long and the misplaced tiles are counted
+ * with a bit count of the different nibbles.</br>
+ * The Manhattan distance is updated in each move with a table of distances by tile and cell.
+ * @author Palex
+ * @see Boards#create(int, int, int)
+ */
+public class BitBoard implements Board {
+
+	/** Maximum number of cells */
+	public static final int MAX_CELLS = 16;
+
+	private static final long LOW_BITS = 0x1111111111111111L;	// Lowest bit of each nibble
+
+	private final int width, height, size, goalHole;
+	private final long solved;		// Board solved
+	private final long colMask;		// Lowest bit of each nibble in column 0
+	private final byte[] distance;	// Manhattan distance of tile t in cell c: [t*16+c]
+	private final MoveTable moves;	// Adjacent cells of each cell
+	private long bits;				// The tile of each cell
+	private int hole;				// Current cell of the hole
+	private int manhattan;			// Sum of distances of tiles (hole excluded)
+
+	/**
+	 * Creates a solved board
+	 * @param width number of columns
+	 * @param height number of lines
+	 * @param goalHole cell of the hole in solved board
+	 */
+	public BitBoard(int width, int height, int goalHole) {
+		if (width<1 || height<1 || width*height>MAX_CELLS || goalHole<0 || goalHole>=width*height)
+			throw new IllegalArgumentException();
+		this.width = width; this.height = height; this.goalHole = goalHole;
+		size = width*height;
+		long s = 0, col = 0;
+		for(int c=0 ; c<size ; ++c) s |= (long) c << 4*c;
+		for(int y=0 ; y<height ; ++y) col |= 1L << 4*y*width;
+		solved = s;
+		colMask = col;
+		moves = MoveTable.get(width, height);
+		distance = new byte[MAX_CELLS*MAX_CELLS];
+		for(int t=0 ; t<size ; ++t)
+			for(int c=0 ; c<size ; ++c)
+				if (t!=goalHole)
+					distance[t*MAX_CELLS+c] = (byte) (Math.abs(t%width - c%width) + Math.abs(t/width - c/width));
+		reset();
+	}
+
+	private BitBoard(BitBoard b) {
+		width = b.width; height = b.height; size = b.size; goalHole = b.goalHole;
+		solved = b.solved; colMask = b.colMask; distance = b.distance; moves = b.moves;
+		bits = b.bits; hole = b.hole; manhattan = b.manhattan;
+	}
+
+	@Override public int getWidth()		{ return width; }
+	@Override public int getHeight()	{ return height; }
+	@Override public int getSize()		{ return size; }
+	@Override public int getGoalHole()	{ return goalHole; }
+	@Override public int getHole()		{ return hole; }
+	@Override public int getTile(int cell) { return (int) (bits >>> 4*cell) & 0xF; }
+	@Override public boolean isSolved()	{ return bits==solved; }
+
+	/**
+	 * @return the long with all cells (a unique key of the position)
+	 */
+	public long getBits() { return bits; }
+
+	/**
+	 * @return the sum of Manhattan distances of all tiles to home
+	 */
+	public int getManhattan() { return manhattan; }
+
+	@Override
+	public int getMisplaced() {
+		long x = bits ^ solved;
+		x = (x | x>>>1 | x>>>2 | x>>>3) & LOW_BITS;	// One bit for each different cell
+		int diff = Long.bitCount(x);
+		return hole==goalHole ? diff : diff-1;		// The cell of hole is not a tile
+	}
+
+	@Override
+	public boolean canMoveHole(Direction d) {
+		return moves.target(hole, d.ordinal()) >= 0;
+	}
+
+	@Override
+	public boolean moveHole(Direction d) {
+		int cell = moves.target(hole, d.ordinal());
+		if (cell<0) return false;
+		int t = getTile(cell);
+		long x = t ^ goalHole;
+		bits ^= x << 4*hole | x << 4*cell;	// Swaps the nibbles
+		manhattan += distance[t*MAX_CELLS+hole] - distance[t*MAX_CELLS+cell];
+		hole = cell;
+		return true;
+	}
+
+	@Override
+	public int slide(int cell) {
+		int x = cell%width, y = cell/width;
+		int hx = hole%width, hy = hole/width;
+		long mask;		// Nibbles of tiles to move
+		int n, step;	// Number of tiles and offset (in cells) of each tile move
+		if (y==hy && x!=hx) {
+			n = Math.abs(x-hx);
+			step = x>hx ? -1 : 1;
+			mask = ((1L << 4*n) - 1) << 4*Math.min(cell, hole+1);
+		} else if (x==hx && y!=hy) {
+			n = Math.abs(y-hy);
+			step = y>hy ? -width : width;
+			long col = colMask & ((1L << 4*width*n) - 1);	// n cells in column 0
+			mask = (col * 0xF) << 4*(Math.min(y, hy+1)*width + x);
+		} else return 0; 	// Not in line or is the hole
+		for(int c=cell ; c!=hole ; c+=step) {	// Distance changes of each tile
+			int t = getTile(c);
+			manhattan += distance[t*MAX_CELLS+c+step] - distance[t*MAX_CELLS+c];
+		}
+		long tiles = bits & mask;
+		tiles = step<0 ? tiles >>> -4*step : tiles << 4*step;
+		bits = bits & ~(mask | 0xFL << 4*hole) | tiles | (long) goalHole << 4*cell;
+		hole = cell;
+		return n;
+	}
+
+	@Override
+	public void reset() {
+		bits = solved;
+		hole = goalHole;
+		manhattan = 0;
+	}
+
+	@Override
+	public void getCells(int[] dst) {
+		long b = bits;
+		for(int i=0 ; i<size ; ++i, b >>>= 4)
+			dst[i] = (int) b & 0xF;
+	}
+
+	@Override
+	public void setCells(int[] src) {
+		if (src==null || src.length!=size) throw new IllegalArgumentException();
+		long b = 0, seen = 0;
+		int h = -1, m = 0;
+		for(int i=0 ; i<size ; ++i) {
+			int t = src[i];
+			if (t<0 || t>=size || (seen & 1L<<t)!=0) throw new IllegalArgumentException();
+			seen |= 1L<<t;
+			b |= (long) t << 4*i;
+			if (t==goalHole) h = i;
+			else m += distance[t*MAX_CELLS+i];
+		}
+		bits = b; hole = h; manhattan = m;
+	}
+
+	/**
+	 * Sets all cells from a long (as returned by getBits())
+	 * @throws IllegalArgumentException If bits is not a permutation of tiles
+	 */
+	public void setBits(long b) {
+		int h = -1, m = 0;
+		long seen = 0;
+		for(int i=0 ; i<size ; ++i) {
+			int t = (int) (b >>> 4*i) & 0xF;
+			if (t>=size || (seen & 1L<<t)!=0) throw new IllegalArgumentException();
+			seen |= 1L<<t;
+			if (t==goalHole) h = i;
+			else m += distance[t*MAX_CELLS+i];
+		}
+		if (size<MAX_CELLS && b>>>4*size != 0) throw new IllegalArgumentException();
+		bits = b; hole = h; manhattan = m;
+	}
+
+	@Override
+	public Board copy() { return new BitBoard(this); }
+}
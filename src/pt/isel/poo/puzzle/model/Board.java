@@ -0,0 +1,75 @@
+package pt.isel.poo.puzzle.model;
+
+import pt.isel.poo.puzzle.Direction;
+
+/**
+ * Model of a sliding puzzle board, without any dependency of Android.</br>
+ * Each cell is identified by the index <code>y*width+x</code>.
+ * Each tile is identified by the index of its home cell (the cell where it is when the puzzle is solved),
+ * so the hole is the tile identified by <code>getGoalHole()</code>.
+ * @author Palex
+ */
+public interface Board {
+	int getWidth();
+	int getHeight();
+	/**
+	 * @return number of cells (width*height)
+	 */
+	int getSize();
+	/**
+	 * @return the cell of the hole when the puzzle is solved
+	 */
+	int getGoalHole();
+	/**
+	 * @return the cell where the hole is (O(1))
+	 */
+	int getHole();
+	/**
+	 * @param cell index of the cell
+	 * @return the tile in that cell (the home cell of the tile)
+	 */
+	int getTile(int cell);
+	/**
+	 * @return the number of tiles (hole excluded) out of the home cell
+	 */
+	int getMisplaced();
+	/**
+	 * @return true if all tiles are in the home cell (O(1))
+	 */
+	boolean isSolved();
+	/**
+	 * Verify if the hole can be moved in that direction
+	 */
+	boolean canMoveHole(Direction d);
+	/**
+	 * Moves the hole to the adjacent cell. The tile in that cell moves to the opposite direction.
+	 * @return false if the hole is in the border
+	 */
+	boolean moveHole(Direction d);
+	/**
+	 * Moves all tiles in line between the cell and the hole, one position to the hole direction.
+	 * After the move the hole is in the cell.
+	 * @param cell index of the cell of the first tile to move
+	 * @return number of tiles moved (0 if the cell is not in line with the hole)
+	 */
+	int slide(int cell);
+	/**
+	 * Puts all tiles in the home cells
+	 */
+	void reset();
+	/**
+	 * Copy the tiles of each cell to an array
+	 * @param cells array to fill, with at least getSize() elements
+	 */
+	void getCells(int[] cells);
+	/**
+	 * Sets the tile of all cells
+	 * @param cells The tile of each cell
+	 * @throws IllegalArgumentException If the array is not a valid permutation of tiles
+	 */
+	void setCells(int[] cells);
+	/**
+	 * @return a new independent board with the same tiles
+	 */
+	Board copy();
+}
@@ -0,0 +1,134 @@
+package pt.isel.poo.puzzle.model;
+
+import java.util.Arrays;
+
+/**
+ * Stream of the changes of a board, delivered in batches to the observers.</br>
+ * Each logical move (the slide of a line of tiles to the hole) is one event with:
+ * the cell where the slide started (the farthest tile moved, where the hole goes),
+ * the cell of the hole before the move, the number of tiles displaced, the new hole
+ * and the rank of the resulting position (-1 if not computed).
+ * When all tiles are changed at once (reset or set of all cells) the event is a RESET,
+ * with from and to -1, and the observers must read the board again.</br>
+ * The events are kept in parallel arrays until flush(), so publishing creates no objects.
+ * The batch is flushed when full, and the pending hook can schedule the flush
+ * (in Android, to the end of the current message of the UI thread).
+ * Not thread safe.
+ * @author Palex
+ * @see ObservedBoard
+ */
+public class BoardEvents {
+
+	public static final int RESET = -1;		// From and to cells of an event that changed all tiles
+	public static final int DEFAULT_CAPACITY = 64;
+
+	/**
+	 * Receives the events of a batch
+	 * @author Palex
+	 */
+	public interface Observer {
+		/**
+		 * Called in each flush with new events. The events are valid only during the call.
+		 * @param events the batch, read by index with the getters
+		 * @param count number of events in the batch (indexes 0..count-1)
+		 */
+		void onChanges(BoardEvents events, int count);
+	}
+
+	private Observer[] observers = new Observer[0];
+	private Runnable pendingHook;	// Called when the first event of a batch is added
+	private boolean ranked;			// Observers want the ranks
+
+	private int count;				// Events in the batch
+	private final int[] from, to, tiles, hole;
+	private final long[] rank;
+	private long total;				// Events published since created
+	private boolean flushing;
+
+	public BoardEvents() { this(DEFAULT_CAPACITY); }
+
+	/**
+	 * @param capacity maximum events in a batch (flushed when full)
+	 */
+	public BoardEvents(int capacity) {
+		if (capacity<1) throw new IllegalArgumentException("Invalid capacity");
+		from = new int[capacity]; to = new int[capacity]; tiles = new int[capacity]; hole = new int[capacity];
+		rank = new long[capacity];
+	}
+
+	/**
+	 * Registers an observer
+	 * @param wantsRank true if the observer reads the ranks (computing them costs O(n^2) by move)
+	 */
+	public void addObserver(Observer o, boolean wantsRank) {
+		observers = Arrays.copyOf(observers, observers.length+1);
+		observers[observers.length-1] = o;
+		ranked |= wantsRank;
+	}
+
+	public void removeObserver(Observer o) {
+		for(int i=0 ; i<observers.length ; ++i)
+			if (observers[i]==o) {
+				Observer[] obs = new Observer[observers.length-1];
+				System.arraycopy(observers, 0, obs, 0, i);
+				System.arraycopy(observers, i+1, obs, i, obs.length-i);
+				observers = obs;
+				return;
+			}
+	}
+
+	/**
+	 * Sets the action called when the first event of a batch is added, to schedule the flush (null for none)
+	 */
+	public void setPendingHook(Runnable hook) { pendingHook = hook; }
+
+	/**
+	 * @return true if some observer wants the ranks
+	 */
+	public boolean isRanked()	{ return ranked; }
+
+	/**
+	 * @return number of events published since created (also the pending)
+	 */
+	public long getTotal()		{ return total; }
+
+	/**
+	 * @return number of events not yet delivered
+	 */
+	public int getPending()		{ return count; }
+
+	public int getFrom(int i)	{ return from[i]; }
+	public int getTo(int i)		{ return to[i]; }
+	public int getTiles(int i)	{ return tiles[i]; }
+	public int getHole(int i)	{ return hole[i]; }
+	public long getRank(int i)	{ return rank[i]; }
+	public boolean isReset(int i) { return from[i]==RESET; }
+
+	/**
+	 * Adds an event to the batch
+	 * @throws IllegalStateException If called by an observer during the flush
+	 */
+	public void publish(int from, int to, int tiles, int hole, long rank) {
+		if (flushing) throw new IllegalStateException("Board changed by an observer");
+		if (count==this.from.length) flush();
+		int i = count++;
+		this.from[i] = from; this.to[i] = to; this.tiles[i] = tiles; this.hole[i] = hole; this.rank[i] = rank;
+		++total;
+		if (i==0 && pendingHook!=null) pendingHook.run();
+	}
+
+	/**
+	 * Delivers the pending events to all observers.
+	 * The observers must not change the board.
+	 */
+	public void flush() {
+		if (count==0 || flushing) return;
+		flushing = true;
+		try {
+			for(Observer o : observers) o.onChanges(this, count);
+		} finally {
+			count = 0;
+			flushing = false;
+		}
+	}
+}
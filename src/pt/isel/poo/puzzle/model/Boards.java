@@ -0,0 +1,86 @@
+package pt.isel.poo.puzzle.model;
+
+/**
+ * Utility functions over boards.
+ * @author Palex
+ */
+public final class Boards {
+
+	private Boards() { }
+
+	/**
+	 * Creates a solved board with the best implementation to the dimensions:
+	 * a BitBoard until 16 cells and an ArrayBoard beyond.
+	 * @param width number of columns
+	 * @param height number of lines
+	 * @param goalHole cell of the hole in solved board
+	 */
+	public static Board create(int width, int height, int goalHole) {
+		if (width*height <= BitBoard.MAX_CELLS) 
+			return new BitBoard(width, height, goalHole);
+		return new ArrayBoard(width, height, goalHole);
+	}
+
+	/**
+	 * Verify if the array is a permutation of 0..size-1
+	 */
+	public static boolean isPermutation(int[] cells, int size) {
+		return cells!=null && cells.length==size && isPermutation(cells, new boolean[size]);
+	}
+
+	/**
+	 * Verify if the array is a permutation, without creating objects
+	 * @param seen auxiliary array with cells.length elements
+	 */
+	public static boolean isPermutation(int[] cells, boolean[] seen) {
+		int size = cells.length;
+		for(int i=0 ; i<size ; ++i) seen[i] = false;
+		for(int i=0 ; i<size ; ++i) {
+			int t = cells[i];
+			if (t<0 || t>=size || seen[t]) return false;
+			seen[t] = true;
+		}
+		return true;
+	}
+
+	/**
+	 * Verify if a board can be solved.
+	 * Each move swaps the hole with one tile, so the parity of the permutation
+	 * must be the parity of the distance between the hole and its home cell.
+	 * In boards with one line or column the tiles never change order,
+	 * so they must be in order (the hole in any cell).
+	 */
+	public static boolean isSolvable(Board b) {
+		int[] cells = new int[b.getSize()];
+		b.getCells(cells);
+		return isSolvable(cells, b.getWidth(), b.getGoalHole(), new boolean[cells.length]);
+	}
+
+	/**
+	 * Verify if a board can be solved, without creating objects.
+	 * @param cells the tile in each cell
+	 * @param seen auxiliary array with cells.length elements
+	 */
+	public static boolean isSolvable(int[] cells, int width, int goalHole, boolean[] seen) {
+		int size = cells.length, hole = -1, swaps = 0;
+		if (width==1 || width==size) { // One line or column: the parity rule is not valid
+			for(int i=0, last=-1 ; i<size ; ++i)
+				if (cells[i]!=goalHole) {
+					if (cells[i]<last) return false;
+					last = cells[i];
+				}
+			return true;
+		}
+		for(int i=0 ; i<size ; ++i) seen[i] = false;
+		for(int i=0 ; i<size ; ++i) {
+			if (cells[i]==goalHole) hole = i;
+			if (seen[i]) continue;
+			int len = 0;
+			for(int c=i ; !seen[c] ; c=cells[c], ++len) 
+				seen[c] = true;
+			swaps += len-1;
+		}
+		int dist = Math.abs(hole%width - goalHole%width) + Math.abs(hole/width - goalHole/width);
+		return (swaps & 1) == (dist & 1);
+	}
+}
@@ -0,0 +1,41 @@
+package pt.isel.poo.puzzle.model;
+
+/**
+ * Rectangular region of changed cells (the union of all cells added since the last clear).
+ * @author Palex
+ */
+public class DirtyRegion {
+
+	private int left, top, right, bottom;	// Bounds in cells (inclusive)
+	private boolean empty = true;
+
+	public boolean isEmpty()	{ return empty; }
+	public int getLeft()		{ return left; }
+	public int getTop()			{ return top; }
+	public int getRight()		{ return right; }
+	public int getBottom()		{ return bottom; }
+
+	/**
+	 * Adds the rectangle of cells between (x0,y0) and (x1,y1), in any order
+	 */
+	public void add(int x0, int y0, int x1, int y1) {
+		int l = Math.min(x0,x1), r = Math.max(x0,x1);
+		int t = Math.min(y0,y1), b = Math.max(y0,y1);
+		if (empty) {
+			left = l; top = t; right = r; bottom = b;
+			empty = false;
+		} else {
+			if (l<left) left = l;
+			if (t<top) top = t;
+			if (r>right) right = r;
+			if (b>bottom) bottom = b;
+		}
+	}
+
+	/**
+	 * Adds one cell
+	 */
+	public void add(int x, int y) { add(x, y, x, y); }
+
+	public void clear() { empty = true; }
+}
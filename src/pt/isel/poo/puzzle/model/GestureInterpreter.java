@@ -0,0 +1,151 @@
+package pt.isel.poo.puzzle.model;
+
+/**
+ * Interpreter of touches in a panel of tiles, without any dependency of Android.</br>
+ * Consumes plain touch records (action, x, y, pointer, time) and reports the gestures in tiles:
+ * the press of a tile, a click (released in the same tile), and a drag each time the touch
+ * crosses to other tile. Only the pointer of the press drags.
+ * The actions have the same values of MotionEvent, so the View passes them directly.</br>
+ * The samples of a fast swipe (the historical samples of one MotionEvent) can be interpreted
+ * in a batch: consecutive crossings in the same line and direction are coalesced in one drag
+ * from the first tile to the last, reported at the end of the batch.
+ * @author Palex
+ * @see GridGeometry
+ */
+public class GestureInterpreter {
+
+	public static final int DOWN = 0, UP = 1, MOVE = 2;	// Same values of MotionEvent.ACTION_*
+
+	/**
+	 * Receives the gestures in tiles.
+	 * @author Palex
+	 */
+	public interface Listener {
+		/**
+		 * When a tile is pressed
+		 */
+		void onPress(int xTile, int yTile);
+		/**
+		 * When the pressed tile is released (after a click or when the touch leaves the tile)
+		 */
+		void onRelease(int xTile, int yTile);
+		/**
+		 * When a tile is released in the same tile where the touch was
+		 * @return true if it has effect
+		 */
+		boolean onClick(int xTile, int yTile);
+		/**
+		 * When the touch crosses from one tile to other
+		 * @return true if it has effect
+		 */
+		boolean onDrag(int xFrom, int yFrom, int xTo, int yTo);
+	}
+
+	private final GridGeometry geo;
+	private final Listener listener;
+	private int xTouch, yTouch;	// Tile of last event
+	private int pointerId;		// Pointer of the press
+	private long time;			// Time of the current event
+	private long events;		// Number of events received
+	private boolean batch;		// Coalescing drags
+	private boolean pending;	// There is a drag to report
+	private int xFrom, yFrom, xTo, yTo;	// The drag to report
+	private long drags;			// Number of drags reported
+
+	/**
+	 * @param geo geometry of the panel (converts pixels to tiles)
+	 * @param listener receives the gestures
+	 */
+	public GestureInterpreter(GridGeometry geo, Listener listener) {
+		this.geo = geo;
+		this.listener = listener;
+	}
+
+	/**
+	 * @return time of the event being interpreted (or of the last one)
+	 */
+	public long getTime()	{ return time; }
+
+	/**
+	 * @return number of events received
+	 */
+	public long getEvents()	{ return events; }
+
+	/**
+	 * @return number of drags reported to the listener
+	 */
+	public long getDrags()	{ return drags; }
+
+	/**
+	 * Starts a batch of samples. The drags are coalesced until endBatch().
+	 */
+	public void beginBatch() { batch = true; }
+
+	/**
+	 * Ends the batch, reporting the coalesced drag (if any)
+	 */
+	public void endBatch() {
+		batch = false;
+		flush();
+	}
+
+	// Reports the pending drag
+	private void flush() {
+		if (!pending) return;
+		pending = false;
+		++drags;
+		listener.onDrag(xFrom, yFrom, xTo, yTo);
+	}
+
+	// Reports the drag or, in a batch, coalesces it with the pending one if it continues it in line
+	private void drag(int x0, int y0, int x1, int y1) {
+		if (!batch) { ++drags; listener.onDrag(x0, y0, x1, y1); return; }
+		if (pending && x0==xTo && y0==yTo
+				&& Integer.signum(x1-x0)==Integer.signum(xTo-xFrom) && Integer.signum(y1-y0)==Integer.signum(yTo-yFrom)
+				&& (x1==x0 && xTo==xFrom || y1==y0 && yTo==yFrom)) {
+			xTo = x1; yTo = y1;		// Same line and direction
+			return;
+		}
+		flush();
+		pending = true;
+		xFrom = x0; yFrom = y0; xTo = x1; yTo = y1;
+	}
+
+	/**
+	 * Interprets a touch event.
+	 * @param action DOWN, UP or MOVE (other actions are ignored)
+	 * @param x coordinate in pixels
+	 * @param y coordinate in pixels
+	 * @param pointer identifier of the pointer
+	 * @param time of the event (only passed to the listener by getTime())
+	 * @return true if the event was consumed
+	 */
+	public boolean onTouch(int action, int x, int y, int pointer, long time) {
+		++events;
+		if (!geo.contains(x, y)) return false;
+		this.time = time;
+		int xt = geo.column(x), yt = geo.line(y);
+		if (action!=MOVE) flush();
+		switch (action) {
+		case DOWN:
+			pointerId = pointer;
+			listener.onPress(xt, yt);
+			xTouch = xt; yTouch = yt;
+			return true;
+		case UP:
+			if (xTouch==xt && yTouch==yt)
+				listener.onClick(xt, yt);
+			listener.onRelease(xTouch, yTouch);
+			return true;
+		case MOVE:
+			if (xt!=xTouch || yt!=yTouch) {
+				listener.onRelease(xTouch, yTouch);
+				if (pointer==pointerId)
+					drag(xTouch, yTouch, xt, yt);
+				xTouch = xt; yTouch = yt;
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,293 @@
+package pt.isel.poo.puzzle.model;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Replays a stream of touches against a board, at full speed, in a plain JVM.</br>
+ * The touches are interpreted by GestureInterpreter in a panel of the given size in pixels,
+ * and the gestures move the tiles with the same rules of the game: a click moves the tile
+ * adjacent to the hole and a drag slides the line of tiles to the hole.
+ * Clicks in the hole (hints) are counted but do not move tiles.</br>
+ * The stream is kept in parallel arrays, so the replay creates no objects.
+ * The text format has one item per line (and lines started by '#' are comments):
+ * <pre>
+ *   board width height goalHole
+ *   view widthPixels heightPixels
+ *   start tile tile ...     (optional, the solved board by default)
+ *   DOWN|UP|MOVE x y pointer time
+ *   expect tile tile ...    (optional, the tiles after the replay)
+ * </pre>
+ * @author Palex
+ */
+public class GestureReplay implements GestureInterpreter.Listener {
+
+	private static final String[] ACTIONS = { "DOWN", "UP", "MOVE" };	// Index is the action
+
+	private final Board board;
+	private final int width;
+	private final int viewWidth, viewHeight;	// Panel size in pixels
+	private final GestureInterpreter gestures;
+	private final GridGeometry geo;
+	private final int[] start;		// Tiles before the replay
+	private int[] expected;			// Tiles after the replay (null if unknown)
+
+	private int size;				// Number of events
+	private int[] actions = new int[256], xs = new int[256], ys = new int[256], pointers = new int[256];
+	private long[] times = new long[256];
+
+	private int pressed;			// Tile pressed (the hole tile if none, as TilePanel with null tiles)
+	private long clicks, drags, hints, moves;	// Gestures with effect and tiles moved
+
+	/**
+	 * @param board board to move (its current tiles are the start of the replay)
+	 * @param viewWidth width of the panel in pixels
+	 * @param viewHeight height of the panel in pixels
+	 */
+	public GestureReplay(Board board, int viewWidth, int viewHeight) {
+		this.board = board;
+		width = board.getWidth();
+		this.viewWidth = viewWidth; this.viewHeight = viewHeight;
+		geo = new GridGeometry(width, board.getHeight());
+		geo.resize(viewWidth, viewHeight);
+		gestures = new GestureInterpreter(geo, this);
+		start = new int[board.getSize()];
+		board.getCells(start);
+	}
+
+	public Board getBoard()				{ return board; }
+	public GridGeometry getGeometry()	{ return geo; }
+	/** @return number of events in the stream */
+	public int size()					{ return size; }
+	/** @return clicks that moved a tile in the last replay */
+	public long getClicks()				{ return clicks; }
+	/** @return drags that moved tiles in the last replay */
+	public long getDrags()				{ return drags; }
+	/** @return clicks in the hole in the last replay */
+	public long getHints()				{ return hints; }
+	/** @return tiles moved in the last replay */
+	public long getMoves()				{ return moves; }
+
+	/**
+	 * Adds an event to the end of the stream
+	 */
+	public void add(int action, int x, int y, int pointer, long time) {
+		if (size==actions.length) {
+			int n = size*2;
+			actions = Arrays.copyOf(actions, n); xs = Arrays.copyOf(xs, n); ys = Arrays.copyOf(ys, n);
+			pointers = Arrays.copyOf(pointers, n); times = Arrays.copyOf(times, n);
+		}
+		actions[size] = action; xs[size] = x; ys[size] = y; pointers[size] = pointer; times[size] = time;
+		++size;
+	}
+
+	/**
+	 * Sets the tiles expected after the replay (null to not verify)
+	 */
+	public void setExpected(int[] cells) { expected = cells==null ? null : cells.clone(); }
+
+	/**
+	 * Replays all events from the start tiles.
+	 * @return true if the board has the expected tiles (or if there are no expected tiles)
+	 */
+	public boolean run() {
+		board.setCells(start);
+		pressed = board.getGoalHole();
+		clicks = drags = hints = moves = 0;
+		for(int i=0 ; i<size ; ++i)
+			gestures.onTouch(actions[i], xs[i], ys[i], pointers[i], times[i]);
+		return matches();
+	}
+
+	/**
+	 * @return true if the board has the expected tiles (or if there are no expected tiles)
+	 */
+	public boolean matches() {
+		if (expected==null) return true;
+		for(int c=0 ; c<expected.length ; ++c)
+			if (board.getTile(c)!=expected[c]) return false;
+		return true;
+	}
+
+	@Override
+	public void onPress(int xt, int yt)		{ pressed = board.getTile(yt*width+xt); }
+
+	@Override
+	public void onRelease(int xt, int yt)	{ pressed = board.getGoalHole(); }
+
+	@Override
+	public boolean onClick(int xt, int yt) {
+		int cell = yt*width+xt, hole = board.getHole();
+		if (board.getTile(cell)!=pressed) return false;
+		if (cell==hole) { ++hints; return true; }
+		int dx = Math.abs(cell%width - hole%width), dy = Math.abs(cell/width - hole/width);
+		if (dx+dy!=1) return false;		// Not adjacent to the hole
+		++clicks;
+		moves += board.slide(cell);
+		return true;
+	}
+
+	@Override
+	public boolean onDrag(int xFrom, int yFrom, int xTo, int yTo) {
+		int dx = Integer.signum(xTo-xFrom), dy = Integer.signum(yTo-yFrom);
+		if (dx!=0 && dy!=0) return false;	// Diagonal move not allowed
+		int hole = board.getHole();
+		// The hole must be in line, in move direction
+		if (Integer.signum(hole%width-xFrom)!=dx || Integer.signum(hole/width-yFrom)!=dy) return false;
+		int n = board.slide(yFrom*width+xFrom);
+		if (n==0) return false;
+		++drags;
+		moves += n;
+		return true;
+	}
+
+	/**
+	 * Reads a stream in text format
+	 * @throws IOException If the stream can not be read or has an invalid format
+	 */
+	public static GestureReplay read(BufferedReader in) throws IOException {
+		GestureReplay r = null;
+		int w = 0, h = 0, goal = 0, lineNum = 0;
+		int[] startCells = null;
+		String line;
+		try {
+			while ((line = in.readLine())!=null) {
+				++lineNum;
+				line = line.trim();
+				if (line.length()==0 || line.charAt(0)=='#') continue;
+				String[] f = line.split("\\s+");
+				if (f[0].equals("board")) {
+					w = Integer.parseInt(f[1]); h = Integer.parseInt(f[2]); goal = Integer.parseInt(f[3]);
+				} else if (f[0].equals("start")) {
+					startCells = parseCells(f, w*h);
+				} else if (f[0].equals("view")) {
+					if (w==0) throw new IOException("view before board");
+					Board b = Boards.create(w, h, goal);
+					if (startCells!=null) b.setCells(startCells);
+					r = new GestureReplay(b, Integer.parseInt(f[1]), Integer.parseInt(f[2]));
+				} else if (f[0].equals("expect")) {
+					if (r==null) throw new IOException("expect before view");
+					r.setExpected(parseCells(f, w*h));
+				} else {
+					if (r==null) throw new IOException("event before view");
+					int action = Arrays.asList(ACTIONS).indexOf(f[0]);
+					if (action<0) action = Integer.parseInt(f[0]);
+					r.add(action, Integer.parseInt(f[1]), Integer.parseInt(f[2]), Integer.parseInt(f[3]), Long.parseLong(f[4]));
+				}
+			}
+		} catch (RuntimeException e) {	// NumberFormat, ArrayIndexOutOfBounds or IllegalArgument
+			throw new IOException("Invalid line "+lineNum+": "+e.getMessage());
+		}
+		if (r==null) throw new IOException("No board and view");
+		return r;
+	}
+
+	private static int[] parseCells(String[] f, int n) {
+		if (f.length-1!=n) throw new IllegalArgumentException("Expected "+n+" tiles");
+		int[] cells = new int[n];
+		for(int i=0 ; i<n ; ++i) cells[i] = Integer.parseInt(f[i+1]);
+		return cells;
+	}
+
+	/**
+	 * Writes the stream in text format (with the expected tiles, if known)
+	 */
+	public void write(PrintWriter out) {
+		out.printf("board %d %d %d\n", width, board.getHeight(), board.getGoalHole());
+		out.print("start");
+		for(int t : start) out.print(" "+t);
+		out.println();
+		out.printf("view %d %d\n", viewWidth, viewHeight);
+		for(int i=0 ; i<size ; ++i)
+			out.printf("%s %d %d %d %d\n", actions[i]<ACTIONS.length ? ACTIONS[actions[i]] : ""+actions[i], xs[i], ys[i], pointers[i], times[i]);
+		if (expected!=null) {
+			out.print("expect");
+			for(int t : expected) out.print(" "+t);
+			out.println();
+		}
+	}
+
+	/**
+	 * Generates a stream of random gestures with effect: clicks on tiles adjacent to the hole
+	 * and swipes of lines to the hole, with MOVE samples every quarter of tile.
+	 * The expected tiles are the result of the gestures.
+	 * @param board the start board (not changed)
+	 */
+	public static GestureReplay random(Board board, int viewWidth, int viewHeight, int gestures, long seed) {
+		Board b = board.copy();
+		GestureReplay r = new GestureReplay(b, viewWidth, viewHeight);
+		Random rnd = new Random(seed);
+		MoveTable mt = MoveTable.get(b.getWidth(), b.getHeight());
+		GridGeometry geo = r.geo;
+		int w = b.getWidth(), tw = geo.getTileWidth(), th = geo.getTileHeight();
+		long time = 0;
+		for(int g=0 ; g<gestures ; ++g) {
+			int hole = b.getHole();
+			int d = mt.dir(hole, rnd.nextInt(mt.count(hole)));
+			int cell = mt.target(hole, d), n = 1;	// The last tile of the line to move
+			for(int c ; rnd.nextBoolean() && (c = mt.target(cell, d))>=0 ; ++n) cell = c;
+			int x = geo.tileLeft(cell%w) + tw/2, y = geo.tileTop(cell/w) + th/2;
+			r.add(GestureInterpreter.DOWN, x, y, 0, time += 40);
+			if (n==1 && rnd.nextBoolean())			// Click
+				r.add(GestureInterpreter.UP, x, y, 0, time += 60);
+			else {									// Swipe one tile to the hole
+				int dx = hole%w - cell%w, dy = hole/w - cell/w;
+				dx = Integer.signum(dx)*tw/4; dy = Integer.signum(dy)*th/4;
+				for(int i=0 ; i<4 ; ++i) r.add(GestureInterpreter.MOVE, x += dx, y += dy, 0, time += 8);
+				r.add(GestureInterpreter.UP, x, y, 0, time += 8);
+			}
+			b.slide(cell);
+		}
+		int[] end = new int[b.getSize()];
+		b.getCells(end);
+		r.setExpected(end);
+		b.setCells(r.start);
+		return r;
+	}
+
+	/**
+	 * Measures the events per second of the replay of a stream, and verifies the result.</br>
+	 * Usage: GestureReplay file [repeat]</br>
+	 *        GestureReplay -random width height gestures seed [repeat [file to write]]
+	 */
+	public static void main(String[] args) throws IOException {
+		GestureReplay r;
+		int repeat = 10;
+		if (args.length>=5 && args[0].equals("-random")) {
+			int w = Integer.parseInt(args[1]), h = Integer.parseInt(args[2]);
+			Board b = Boards.create(w, h, w-1);
+			new Shuffler(new Random(Long.parseLong(args[4]))).shuffle(b);
+			r = random(b, 1080, 1080*h/w, Integer.parseInt(args[3]), Long.parseLong(args[4]));
+			if (args.length>5) repeat = Integer.parseInt(args[5]);
+			if (args.length>6) {
+				PrintWriter out = new PrintWriter(args[6]);
+				try { r.write(out); } finally { out.close(); }
+			}
+		} else if (args.length>=1 && args.length<=2) {
+			BufferedReader in = new BufferedReader(new FileReader(args[0]));
+			try { r = read(in); } finally { in.close(); }
+			if (args.length>1) repeat = Integer.parseInt(args[1]);
+		} else {
+			System.err.println("Usage: GestureReplay file [repeat]");
+			System.err.println("       GestureReplay -random width height gestures seed [repeat [file to write]]");
+			System.exit(1);
+			return;
+		}
+		boolean ok = true;
+		long best = Long.MAX_VALUE;
+		for(int i=0 ; i<repeat ; ++i) {
+			long t = System.nanoTime();
+			ok &= r.run();
+			best = Math.min(best, System.nanoTime()-t);
+		}
+		System.out.printf("%d events, %d clicks, %d drags, %d hints, %d tiles moved\n",
+				r.size(), r.getClicks(), r.getDrags(), r.getHints(), r.getMoves());
+		System.out.printf("%.1f M events/s (best of %d), result %s\n",
+				r.size()*1e3/Math.max(best, 1), repeat, ok ? "OK" : "DIFFERENT FROM EXPECTED");
+		if (!ok) System.exit(2);
+	}
+}
@@ -0,0 +1,80 @@
+package pt.isel.poo.puzzle.model;
+
+/**
+ * Geometry of a panel of tiles in pixels, without any dependency of Android.</br>
+ * Maps touch coordinates to tiles and tiles to rectangles.
+ * The grid lines are between tiles, so each tile has one pixel less than the cell.
+ * @author Palex
+ */
+public class GridGeometry {
+
+	private int xTiles, yTiles;				// Panel dimensions in tiles
+	private int wt, ht;						// width and height of each tile
+	private int xInit, yInit, xEnd, yEnd;	// Bounds of panel
+
+	public GridGeometry(int xTiles, int yTiles) { setTiles(xTiles, yTiles); }
+
+	public int getWidthInTiles()	{ return xTiles; }
+	public int getHeightInTiles()	{ return yTiles; }
+	public int getTileWidth()		{ return wt; }
+	public int getTileHeight()		{ return ht; }
+	public int getLeft()			{ return xInit; }
+	public int getTop()				{ return yInit; }
+	public int getRight()			{ return xEnd; }
+	public int getBottom()			{ return yEnd; }
+
+	/**
+	 * Changes the dimensions in tiles. Must be followed by resize().
+	 */
+	public void setTiles(int xTiles, int yTiles) {
+		this.xTiles = xTiles; this.yTiles = yTiles;
+	}
+
+	/**
+	 * Calculate each tile dimensions and other bounds of internal panel 
+	 * @param w width of panel in pixels
+	 * @param h height of panel in pixels
+	 */
+	public void resize(int w, int h) {
+		w -=1; h -=-1;
+		wt = w/xTiles; ht = h/yTiles;
+		ht = Math.min(wt, ht); wt = ht;
+		xInit = (w%xTiles)/2; yInit = (h%yTiles)/2;
+		xEnd = xInit+wt*xTiles; yEnd = yInit+ht*yTiles;
+	}
+
+	/**
+	 * Verify if the point is inside the tiles
+	 */
+	public boolean contains(int x, int y) {
+		return x >= xInit && x < xEnd && y >= yInit && y < yEnd;
+	}
+
+	/**
+	 * @return the column of the tile in x coordinate (the point must be inside)
+	 */
+	public int column(int x) { return (x-xInit)/wt; }
+
+	/**
+	 * @return the line of the tile in y coordinate (the point must be inside)
+	 */
+	public int line(int y) { return (y-yInit)/ht; }
+
+	/**
+	 * @return the index (line*width+column) of the tile in the point, or -1 if outside
+	 */
+	public int tileAt(int x, int y) {
+		if (!contains(x,y)) return -1;
+		return line(y)*xTiles + column(x);
+	}
+
+	/**
+	 * @return the left coordinate of the tile area (without the grid line)
+	 */
+	public int tileLeft(int xt) { return xInit + xt*wt +1; }
+
+	/**
+	 * @return the top coordinate of the tile area (without the grid line)
+	 */
+	public int tileTop(int yt) { return yInit + yt*ht +1; }
+}
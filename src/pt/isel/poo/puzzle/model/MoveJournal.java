@@ -0,0 +1,244 @@
+package pt.isel.poo.puzzle.model;
+
+import java.util.Arrays;
+
+import pt.isel.poo.puzzle.Direction;
+
+/**
+ * History of the moves of the hole, with undo and redo.</br>
+ * Each move is stored in 2 bits (the ordinal of the direction), 32 in each long,
+ * in a circular buffer that grows until the maximum number of moves.
+ * When full the oldest moves are discarded.
+ * The moves undone are kept after the moves done, until a new move is added.</br>
+ * The moves added in one call are undone and redone together as one line move,
+ * because they are the same as sliding the line of tiles at once.
+ * A parallel bitset marks the first move of each line move, so separate line moves
+ * in the same direction are separate steps.
+ * @author Palex
+ */
+public class MoveJournal {
+
+	private static final int PER_WORD = 32;		// Moves in each long
+
+	private final int maxMoves;	// Maximum moves kept (done and undone)
+	private long[] words;		// The moves (circular)
+	private long[] starts;		// Bit of each move set if it starts a line move (same positions of words)
+	private int first;			// Index of the oldest move in the buffer
+	private int done;			// Moves done (that can be undone)
+	private int undone;			// Moves undone (that can be redone), after the done
+
+	/**
+	 * Journal without practical limit
+	 */
+	public MoveJournal() { this(1<<30); }
+
+	/**
+	 * @param maxMoves maximum number of moves kept (the oldest are discarded)
+	 */
+	public MoveJournal(int maxMoves) {
+		if (maxMoves<PER_WORD) throw new IllegalArgumentException("Too small");
+		this.maxMoves = maxMoves;
+		words = new long[4];
+		starts = new long[2];
+	}
+
+	/**
+	 * @return number of moves that can be undone
+	 */
+	public int size() { return done; }
+
+	/**
+	 * @return number of moves that can be redone
+	 */
+	public int redoSize() { return undone; }
+
+	/**
+	 * @return bytes used by the moves
+	 */
+	public int getBytes() { return (words.length+starts.length)*8; }
+
+	/**
+	 * Removes all moves
+	 */
+	public void clear() { first = done = undone = 0; }
+
+	private int capacity() { return words.length*PER_WORD; }
+
+	// Direction of the move with index i (from the oldest)
+	private int get(int i) {
+		int p = (first+i) % capacity();
+		return (int) (words[p/PER_WORD] >>> (p%PER_WORD)*2) & 3;
+	}
+
+	// True if the move with index i starts a line move
+	private boolean isStart(int i) {
+		int p = (first+i) % capacity();
+		return (starts[p>>>6] & 1L<<p) != 0;
+	}
+
+	private void set(int i, int d, boolean start) {
+		int p = (first+i) % capacity(), w = p/PER_WORD, shift = (p%PER_WORD)*2;
+		words[w] = words[w] & ~(3L<<shift) | (long) d<<shift;
+		if (start) starts[p>>>6] |= 1L<<p;
+		else starts[p>>>6] &= ~(1L<<p);
+	}
+
+	/**
+	 * Adds a move of the hole (one line move of one tile). The moves undone are discarded.
+	 * @param d ordinal of the direction
+	 */
+	public void add(int d) { add(d, 1); }
+
+	/**
+	 * Adds moves of the hole in the same direction (the slide of a line of tiles),
+	 * undone and redone as one line move. The moves undone are discarded.
+	 */
+	public void add(int d, int n) {
+		for(int i=0 ; i<n ; ++i) add(d, i==0);
+	}
+
+	private void add(int d, boolean start) {
+		undone = 0;
+		if (done==capacity() && capacity()<maxMoves) grow();
+		if (done==Math.min(capacity(), maxMoves)) { first = (first+1) % capacity(); --done; } // Discards the oldest
+		set(done++, d, start);
+	}
+
+	public void add(Direction d) { add(d.ordinal()); }
+
+	// Doubles the buffer, with the oldest move in the first position
+	private void grow() {
+		long[] w = new long[words.length*2];
+		int n = done+undone;
+		long[] old = words, oldStarts = starts;
+		int oldFirst = first, oldCap = capacity();
+		words = w; starts = new long[w.length/2]; first = 0;
+		for(int i=0 ; i<n ; ++i) {
+			int p = (oldFirst+i) % oldCap;
+			set(i, (int) (old[p/PER_WORD] >>> (p%PER_WORD)*2) & 3, (oldStarts[p>>>6] & 1L<<p) != 0);
+		}
+	}
+
+	/**
+	 * @return the direction of the last move done, or -1 if none
+	 */
+	public int last() { return done>0 ? get(done-1) : -1; }
+
+	/**
+	 * @return the direction of the next move to redo, or -1 if none
+	 */
+	public int next() { return undone>0 ? get(done) : -1; }
+
+	/**
+	 * Undoes the last line move: the moves added in the last call.
+	 * The hole must be moved the returned times in the opposite direction of last().
+	 * If the start of the line move was discarded, undoes the remaining moves.
+	 * @return number of moves undone (0 if none)
+	 */
+	public int undo() {
+		int n = 0;
+		while (done>0) {
+			--done; ++undone; ++n;
+			if (isStart(done)) break;
+		}
+		return n;
+	}
+
+	/**
+	 * Redoes the next line move: the moves added in one call.
+	 * The hole must be moved the returned times in the direction of next().
+	 * @return number of moves redone (0 if none)
+	 */
+	public int redo() {
+		int n = 0;
+		while (undone>0) {
+			++done; --undone; ++n;
+			if (undone==0 || isStart(done)) break;
+		}
+		return n;
+	}
+
+	/**
+	 * Redoes all moves in the board, without intermediate positions.
+	 * @return number of moves redone
+	 * @throws IllegalStateException If a move is not valid in the board
+	 */
+	public int redoAll(Board b) {
+		int n = undone;
+		apply(b, done, n);
+		done += n; undone = 0;
+		return n;
+	}
+
+	/**
+	 * Applies all moves done to the board, from the position before the oldest move kept.
+	 * @throws IllegalStateException If a move is not valid in the board
+	 */
+	public void replay(Board b) { apply(b, 0, done); }
+
+	// Moves the hole of the board by n moves from the move i, decoding a long at a time
+	private void apply(Board b, int i, int n) {
+		int cap = capacity();
+		for(int p=(first+i) % cap ; n>0 ; ) {
+			long w = words[p/PER_WORD] >>> (p%PER_WORD)*2;
+			int k = Math.min(n, PER_WORD - p%PER_WORD);
+			for(int j=0 ; j<k ; ++j, w>>>=2)
+				if (!b.moveHole(Direction.of((int) w & 3))) throw new IllegalStateException("Invalid move");
+			n -= k;
+			p = (p+k) % cap;
+		}
+	}
+
+	/**
+	 * Encodes the moves: number of moves done and undone (varints), 4 moves in each byte
+	 * and the starts of the line moves, 8 in each byte.
+	 */
+	public byte[] encode() {
+		int n = done+undone;
+		byte[] data = new byte[10 + (n+3)/4 + (n+7)/8];
+		int len = putVarint(data, putVarint(data, 0, done), undone);
+		for(int i=0 ; i<n ; ++i)
+			data[len + i/4] |= get(i) << (i%4)*2;
+		len += (n+3)/4;
+		for(int i=0 ; i<n ; ++i)
+			if (isStart(i)) data[len + i/8] |= 1 << i%8;
+		return Arrays.copyOf(data, len + (n+7)/8);
+	}
+
+	/**
+	 * Replaces the moves by the encoded ones
+	 * @throws IllegalArgumentException If the data is not valid
+	 */
+	public void decode(byte[] data) {
+		if (data==null) throw new IllegalArgumentException("No data");
+		int[] pos = new int[1];
+		int d = getVarint(data, pos), u = getVarint(data, pos);
+		int n = d+u;
+		if (d<0 || u<0 || n<0 || n>maxMoves || data.length-pos[0] != (n+3)/4 + (n+7)/8) throw new IllegalArgumentException("Invalid journal");
+		clear();
+		int cap = words.length;
+		while (cap*PER_WORD<n) cap *= 2;
+		if (cap>words.length) { words = new long[cap]; starts = new long[cap/2]; }
+		int s = pos[0] + (n+3)/4;
+		for(int i=0 ; i<n ; ++i)
+			set(i, data[pos[0] + i/4] >>> (i%4)*2 & 3, (data[s + i/8] >>> i%8 & 1) != 0);
+		done = d; undone = u;
+	}
+
+	private static int putVarint(byte[] data, int pos, int v) {
+		for( ; v>=0x80 ; v>>>=7) data[pos++] = (byte) (v | 0x80);
+		data[pos++] = (byte) v;
+		return pos;
+	}
+
+	private static int getVarint(byte[] data, int[] pos) {
+		int v = 0;
+		for(int shift=0 ; shift<32 ; shift+=7) {
+			if (pos[0]>=data.length) return -1;
+			int b = data[pos[0]++];
+			v |= (b & 0x7F) << shift;
+			if ((b & 0x80)==0) return v;
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,79 @@
+package pt.isel.poo.puzzle.model;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import pt.isel.poo.puzzle.Direction;
+
+/**
+ * Precomputed moves of the hole for a board dimension.</br>
+ * For each cell has the adjacent cell in each direction (-1 outside the board)
+ * and the list of legal directions, so move generation needs no bounds tests.
+ * The tables are immutable and shared by all boards with the same dimensions (see get()).
+ * Directions are identified by the ordinal in Direction.
+ * @author Palex
+ */
+public final class MoveTable {
+
+	/** Number of directions */
+	public static final int DIRS = 4;
+
+	private static final ConcurrentHashMap<Long, MoveTable> cache = new ConcurrentHashMap<Long, MoveTable>();
+
+	private final int width, height;
+	private final int[] target;		// Adjacent cell of each cell in each direction: [cell*DIRS+dir]
+	private final byte[] count;		// Number of legal directions of each cell
+	private final byte[] dirs;		// Legal directions of each cell: [cell*DIRS+i]
+
+	private MoveTable(int width, int height) {
+		this.width = width; this.height = height;
+		int size = width*height;
+		target = new int[size*DIRS];
+		count = new byte[size];
+		dirs = new byte[size*DIRS];
+		for(int c=0 ; c<size ; ++c)
+			for(int d=0 ; d<DIRS ; ++d) {
+				Direction dir = Direction.of(d);
+				int x = c%width + dir.dx, y = c/width + dir.dy;
+				boolean valid = x>=0 && x<width && y>=0 && y<height;
+				target[c*DIRS+d] = valid ? y*width+x : -1;
+				if (valid) dirs[c*DIRS + count[c]++] = (byte) d;
+			}
+	}
+
+	/**
+	 * Returns the shared table of that dimension (created in the first call)
+	 */
+	public static MoveTable get(int width, int height) {
+		if (width<1 || height<1) throw new IllegalArgumentException();
+		Long key = ((long) width << 32) | height;
+		MoveTable t = cache.get(key);
+		if (t==null) {
+			MoveTable old = cache.putIfAbsent(key, t = new MoveTable(width, height));
+			if (old!=null) t = old;
+		}
+		return t;
+	}
+
+	public int getWidth()	{ return width; }
+	public int getHeight()	{ return height; }
+
+	/**
+	 * @return the opposite direction (the move that undoes d)
+	 */
+	public static int inverse(int d) { return d ^ 2; }
+
+	/**
+	 * @return the cell adjacent to cell in direction d, or -1 if outside
+	 */
+	public int target(int cell, int d) { return target[cell*DIRS+d]; }
+
+	/**
+	 * @return number of legal directions from cell (2 to 4)
+	 */
+	public int count(int cell) { return count[cell]; }
+
+	/**
+	 * @return the i-th legal direction from cell (i < count(cell))
+	 */
+	public int dir(int cell, int i) { return dirs[cell*DIRS+i]; }
+}
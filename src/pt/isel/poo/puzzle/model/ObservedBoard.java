@@ -0,0 +1,93 @@
+package pt.isel.poo.puzzle.model;
+
+import pt.isel.poo.puzzle.Direction;
+
+/**
+ * Board that publishes its changes to a stream of events (decorator of other board).</br>
+ * Each move of the hole or slide of a line is one event, and a reset or set of all cells
+ * is a RESET event. The rank of the resulting position is computed only if some observer
+ * wants it and the board has at most 20 cells (the rank fits in a long).
+ * The copy is an independent board without events.
+ * @author Palex
+ * @see BoardEvents
+ */
+public class ObservedBoard implements Board {
+
+	private final Board board;
+	private final BoardEvents events;
+	private final StateCodec codec;		// To compute the ranks (null if too big)
+	private final int[] cells;			// Auxiliary array to compute the ranks
+
+	/**
+	 * @param board the board to change
+	 * @param events where the changes are published
+	 */
+	public ObservedBoard(Board board, BoardEvents events) {
+		this.board = board;
+		this.events = events;
+		int n = board.getSize();
+		codec = StateCodec.fitsLong(n) ? new StateCodec(n) : null;
+		cells = codec!=null ? new int[n] : null;
+	}
+
+	public BoardEvents getEvents()	{ return events; }
+
+	@Override
+	public int getWidth()			{ return board.getWidth(); }
+	@Override
+	public int getHeight()			{ return board.getHeight(); }
+	@Override
+	public int getSize()			{ return board.getSize(); }
+	@Override
+	public int getGoalHole()		{ return board.getGoalHole(); }
+	@Override
+	public int getHole()			{ return board.getHole(); }
+	@Override
+	public int getTile(int cell)	{ return board.getTile(cell); }
+	@Override
+	public int getMisplaced()		{ return board.getMisplaced(); }
+	@Override
+	public boolean isSolved()		{ return board.isSolved(); }
+	@Override
+	public boolean canMoveHole(Direction d)	{ return board.canMoveHole(d); }
+	@Override
+	public Board copy()				{ return board.copy(); }
+	@Override
+	public void getCells(int[] cells)	{ board.getCells(cells); }
+
+	// Rank of the current position (-1 if not wanted or too big)
+	private long rank() {
+		if (codec==null || !events.isRanked()) return -1;
+		board.getCells(cells);
+		return codec.rank(cells);
+	}
+
+	@Override
+	public boolean moveHole(Direction d) {
+		int hole = board.getHole();
+		if (!board.moveHole(d)) return false;
+		int h = board.getHole();
+		events.publish(h, hole, 1, h, rank());
+		return true;
+	}
+
+	@Override
+	public int slide(int cell) {
+		int hole = board.getHole();
+		int n = board.slide(cell);
+		if (n>0) events.publish(cell, hole, n, cell, rank());
+		return n;
+	}
+
+	@Override
+	public void reset() {
+		board.reset();
+		events.publish(BoardEvents.RESET, BoardEvents.RESET, board.getSize()-1, board.getHole(), rank());
+	}
+
+	@Override
+	public void setCells(int[] cells) {
+		board.setCells(cells);
+		events.publish(BoardEvents.RESET, BoardEvents.RESET, board.getSize()-1, board.getHole(), rank());
+	}
+}
@@ -0,0 +1,93 @@
+package pt.isel.poo.puzzle.model;
+
+import java.util.Random;
+
+import pt.isel.poo.puzzle.Direction;
+
+/**
+ * Generates random boards without replaying moves.</br>
+ * Shuffles all cells (Fisher-Yates), so every permutation has the same probability.
+ * Half of the permutations have no solution, and these are fixed swapping two tiles,
+ * which inverts the parity of the permutation without moving the hole.
+ * Each solvable board is the result of exactly two permutations, so all solvable boards
+ * have the same probability.
+ * In boards with one line or column only the hole moves, and it is put in a random cell.</br>
+ * Uses auxiliary arrays created only for the first board, so it produces no garbage.
+ * @author Palex
+ */
+public class Shuffler {
+
+	private final Random rnd;
+	private int[] cells;		// Auxiliary array with tiles
+	private boolean[] seen;		// Auxiliary array to compute the parity
+
+	public Shuffler(Random rnd) { this.rnd = rnd; }
+
+	public Shuffler() { this(new Random()); }
+
+	/**
+	 * Puts the board in a random solvable position, different of the solved position.
+	 */
+	public void shuffle(Board b) {
+		int size = b.getSize(), width = b.getWidth(), goal = b.getGoalHole();
+		if (size<2) return;		// Only one position
+		if (cells==null || cells.length!=size) {
+			cells = new int[size];
+			seen = new boolean[size];
+		}
+		if (width==1 || width==size) { // One line: the tiles in order and the hole not in its home
+			int hole = rnd.nextInt(size-1);
+			if (hole>=goal) ++hole;
+			for(int i=0, t=0 ; i<size ; ++i) {
+				if (t==goal) ++t;
+				cells[i] = i==hole ? goal : t++;
+			}
+			b.setCells(cells);
+			return;
+		}
+		do {
+			for(int i=0 ; i<size ; ++i) cells[i] = i;
+			for(int i=size-1 ; i>0 ; --i) {
+				int j = rnd.nextInt(i+1);
+				int t = cells[i]; cells[i] = cells[j]; cells[j] = t;
+			}
+			if (!Boards.isSolvable(cells, width, goal, seen)) {
+				// Swaps the first two tiles (the hole excluded)
+				int a = cells[0]==goal ? 1 : 0;
+				int c = cells[a+1]==goal ? a+2 : a+1;
+				int t = cells[a]; cells[a] = cells[c]; cells[c] = t;
+			}
+		} while (isSolved(size));
+		b.setCells(cells);
+	}
+
+	private boolean isSolved(int size) {
+		for(int i=0 ; i<size ; ++i)
+			if (cells[i]!=i) return false;
+		return true;
+	}
+
+	/**
+	 * Makes random moves of the hole, never undoing the previous move.
+	 * Each move is chosen from the legal moves of the hole, without retries.
+	 * @param n number of moves
+	 * @param moves to store the direction (ordinal) of each move, with at least n elements
+	 * @return number of moves done (less than n only in boards with one line or column)
+	 */
+	public int walk(Board b, int n, int[] moves) {
+		MoveTable table = MoveTable.get(b.getWidth(), b.getHeight());
+		int back = -1, done = 0;
+		while (done<n) {
+			int hole = b.getHole(), count = table.count(hole);
+			if (back>=0) --count;	// Excludes the move back
+			if (count<=0) break;	// Dead end (only in one line or column)
+			int i = rnd.nextInt(count);
+			int d = table.dir(hole, i);
+			if (d==back) d = table.dir(hole, count);	// The last is never chosen
+			b.moveHole(Direction.of(d));
+			moves[done++] = d;
+			back = MoveTable.inverse(d);
+		}
+		return done;
+	}
+}
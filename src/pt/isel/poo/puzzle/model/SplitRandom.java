@@ -0,0 +1,79 @@
+package pt.isel.poo.puzzle.model;
+
+import java.util.Random;
+
+/**
+ * Splittable random generator (the SplitMix64 algorithm of java.util.SplittableRandom,
+ * that is only available in Android since API 24).</br>
+ * The state is a long incremented by an odd gamma, and each value is a mix of the state.
+ * The same seed generates always the same values (nextLong and split as SplittableRandom),
+ * so a game is reproduced by its seed.
+ * split() returns a new generator with an independent stream, to use in other thread
+ * without contention (the instances are not thread safe).</br>
+ * Extends Random to be used where a Random is expected (Shuffler, PuzzleCatalog).
+ * @author Palex
+ */
+public class SplitRandom extends Random {
+
+	private static final long serialVersionUID = 1L;
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	// Not initialized in the declaration: setSeed is called by the constructor of Random
+	private long state;		// Incremented by gamma in each value
+	private long gamma;		// Odd increment of the stream
+
+	/**
+	 * Generator with a seed from the time
+	 */
+	public SplitRandom() { this(mix64(System.nanoTime()) ^ System.currentTimeMillis()); }
+
+	/**
+	 * @param seed the same seed generates the same values
+	 */
+	public SplitRandom(long seed) { this(seed, GOLDEN_GAMMA); }
+
+	private SplitRandom(long seed, long gamma) {
+		super(seed);
+		this.state = seed;
+		this.gamma = gamma;
+	}
+
+	/**
+	 * Restarts the stream. The values after depend only on the seed (and the gamma of this stream).
+	 */
+	@Override
+	public synchronized void setSeed(long seed) {
+		super.setSeed(seed);	// Clears the next gaussian
+		state = seed;
+	}
+
+	/**
+	 * @return a new generator with an independent stream, derived from this (deterministic)
+	 */
+	public SplitRandom split() {
+		return new SplitRandom(nextLong(), mixGamma(nextSeed()));
+	}
+
+	private long nextSeed() { return state += gamma; }
+
+	@Override
+	public long nextLong() { return mix64(nextSeed()); }
+
+	@Override
+	protected int next(int bits) { return (int) (mix64(nextSeed()) >>> 64-bits); }
+
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	// Gamma of a new stream: odd and with enough bit transitions
+	private static long mixGamma(long z) {
+		z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+		z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		z = (z ^ (z >>> 33)) | 1L;
+		int n = Long.bitCount(z ^ (z >>> 1));
+		return n<24 ? z ^ 0xAAAAAAAAAAAAAAAAL : z;
+	}
+}
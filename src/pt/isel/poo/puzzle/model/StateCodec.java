@@ -0,0 +1,149 @@
+package pt.isel.poo.puzzle.model;
+
+/**
+ * Compact encoding of board positions (permutations of tiles).</br>
+ * A permutation is encoded by its Lehmer code: for each cell, the number of tiles
+ * in the following cells smaller than its tile. The digit i is less than n-i, so the
+ * code is a number in factorial base, the rank of the permutation (0..n!-1).
+ * Until 20 cells (4x5) the rank fits in a long. For bigger boards the digits
+ * are stored as varints (7 bits per byte), most with one byte.</br>
+ * The rank is unique for each position, so it is also a key for tables of positions.
+ * Uses auxiliary arrays of the instance, so it is not thread safe.
+ * @author Palex
+ */
+public class StateCodec {
+
+	/** Maximum number of cells with rank in a long */
+	public static final int MAX_LONG_CELLS = 20;
+
+	private final int size;			// Number of cells
+	private final boolean[] used;	// Auxiliary array
+	private final int[] digits;		// Auxiliary array with Lehmer code
+
+	public StateCodec(int size) {
+		this.size = size;
+		used = new boolean[size];
+		digits = new int[size];
+	}
+
+	public int getSize() { return size; }
+
+	/**
+	 * @return true if the rank of boards with that number of cells fits in a long
+	 */
+	public static boolean fitsLong(int size) { return size<=MAX_LONG_CELLS; }
+
+	/**
+	 * @return n! (n until 20)
+	 */
+	public static long factorial(int n) {
+		long f = 1;
+		for(int i=2 ; i<=n ; ++i) f *= i;
+		return f;
+	}
+
+	/**
+	 * Computes the rank of a position
+	 * @param cells the tile in each cell
+	 * @throws IllegalArgumentException If cells is not a permutation or is too big for a long
+	 */
+	public long rank(int[] cells) {
+		if (!fitsLong(size)) throw new IllegalArgumentException("Too many cells for a long rank");
+		lehmer(cells);
+		long rank = 0;
+		for(int i=0 ; i<size ; ++i)
+			rank = rank*(size-i) + digits[i];
+		return rank;
+	}
+
+	/**
+	 * Inverse of rank
+	 * @param rank the rank (0..size!-1)
+	 * @param cells to store the tile of each cell
+	 * @throws IllegalArgumentException If the rank is out of range
+	 */
+	public void unrank(long rank, int[] cells) {
+		if (!fitsLong(size) || rank<0 || rank>=factorial(size)) throw new IllegalArgumentException("Invalid rank");
+		for(int i=size-1 ; i>=0 ; --i) {
+			digits[i] = (int) (rank % (size-i));
+			rank /= size-i;
+		}
+		fromLehmer(cells);
+	}
+
+	/**
+	 * Encodes a position of any size
+	 * @throws IllegalArgumentException If cells is not a permutation
+	 */
+	public byte[] encode(int[] cells) {
+		lehmer(cells);
+		int len = 0;
+		for(int i=0 ; i<size ; ++i) len += digits[i]<0x80 ? 1 : digits[i]<0x4000 ? 2 : 3;
+		byte[] res = new byte[len];
+		for(int i=0, p=0 ; i<size ; ++i) {
+			int d = digits[i];
+			while (d>=0x80) { res[p++] = (byte) (d | 0x80); d >>>= 7; }
+			res[p++] = (byte) d;
+		}
+		return res;
+	}
+
+	/**
+	 * Inverse of encode
+	 * @throws IllegalArgumentException If the data is not a valid encoding
+	 */
+	public void decode(byte[] data, int[] cells) {
+		if (data==null) throw new IllegalArgumentException("No data");
+		int p = 0;
+		for(int i=0 ; i<size ; ++i) {
+			int d = 0;
+			for(int shift=0 ; ; shift+=7) {
+				if (p>=data.length || shift>21) throw new IllegalArgumentException("Invalid encoding");
+				int b = data[p++];
+				d |= (b & 0x7F) << shift;
+				if ((b & 0x80)==0) break;
+			}
+			if (d>=size-i) throw new IllegalArgumentException("Invalid encoding");
+			digits[i] = d;
+		}
+		if (p!=data.length) throw new IllegalArgumentException("Invalid encoding");
+		fromLehmer(cells);
+	}
+
+	/**
+	 * Key to use in tables of positions. Is the rank until 20 cells, and a hash of the encoding beyond.
+	 */
+	public long key(int[] cells) {
+		if (fitsLong(size)) return rank(cells);
+		lehmer(cells);
+		long h = 0xcbf29ce484222325L;	// FNV-1a of the digits
+		for(int i=0 ; i<size ; ++i) {
+			h ^= digits[i];
+			h *= 0x100000001b3L;
+		}
+		return h;
+	}
+
+	// Computes the Lehmer code of cells in digits
+	private void lehmer(int[] cells) {
+		if (cells.length!=size || !Boards.isPermutation(cells, used)) throw new IllegalArgumentException("Not a permutation");
+		for(int i=0 ; i<size ; ++i) {
+			int t = cells[i], d = 0;
+			for(int j=i+1 ; j<size ; ++j)
+				if (cells[j]<t) ++d;
+			digits[i] = d;
+		}
+	}
+
+	// Converts the Lehmer code in digits to cells
+	private void fromLehmer(int[] cells) {
+		for(int i=0 ; i<size ; ++i) used[i] = false;
+		for(int i=0 ; i<size ; ++i) {
+			int d = digits[i], t = 0;
+			for(;; ++t)
+				if (!used[t] && d--==0) break;
+			used[t] = true;
+			cells[i] = t;
+		}
+	}
+}
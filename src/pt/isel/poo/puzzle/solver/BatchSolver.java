@@ -0,0 +1,335 @@
+package pt.isel.poo.puzzle.solver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import pt.isel.poo.puzzle.Direction;
+import pt.isel.poo.puzzle.model.Board;
+import pt.isel.poo.puzzle.model.Boards;
+
+/**
+ * Solves the boards of a file in parallel, writing the results in the order of the file.</br>
+ * The boards are read one at a time and solved by a fixed pool of workers, each with its own solver.
+ * At most a bounded number of boards are in progress: when the oldest is not solved the reading waits,
+ * so the memory does not depend on the size of the file. Each result is a line with:
+ * <pre>
+ *   index length nodes milliseconds moves
+ * </pre>
+ * The moves are the directions of the hole (L, U, R, D). The length is -1 if the limits were reached
+ * (moves "-") or the board is unsolvable (moves "unsolvable").</br>
+ * The input file is text, with one board per line (and lines started by '#' are comments):
+ * <pre>
+ *   width height goalHole tile tile ...
+ * </pre>
+ * or only the tiles, with the dimensions given in the command line.
+ * Or binary (detected by the MAGIC), with a header followed by the boards:
+ * <pre>
+ *   int MAGIC, int VERSION
+ *   byte width, byte height, byte goalHole, byte[width*height] tiles
+ * </pre>
+ * @author Palex
+ */
+public class BatchSolver {
+
+	public static final int MAGIC = 0x50424154;	// "PBAT"
+	public static final int VERSION = 1;
+	public static final int MAX_CELLS = 255;	// Cells of the boards in binary files
+
+	/**
+	 * Reads the boards of a file, one at a time
+	 */
+	public static class Reader {
+		private final DataInputStream bin;		// Binary file (null if text)
+		private final BufferedReader text;		// Text file (null if binary)
+		private final int width, height, goalHole;	// Default dimensions of text lines (0 if none)
+		private int line;						// Lines (text) or boards (binary) read
+
+		/**
+		 * @param in the file (binary or text)
+		 * @param width width of the boards of text lines with only tiles (0 if not allowed)
+		 * @param height height of the boards of text lines with only tiles
+		 * @param goalHole goal hole of the boards of text lines with only tiles
+		 * @throws IOException If the binary file has other version
+		 */
+		public Reader(InputStream in, int width, int height, int goalHole) throws IOException {
+			this.width = width; this.height = height; this.goalHole = goalHole;
+			BufferedInputStream bis = new BufferedInputStream(in, 1<<16);
+			bis.mark(4);
+			DataInputStream din = new DataInputStream(bis);
+			int magic;
+			try { magic = din.readInt(); }
+			catch (EOFException e) { magic = 0; }	// Short text file
+			if (magic==MAGIC) {
+				if (din.readInt()!=VERSION) throw new IOException("Unsupported batch file version");
+				bin = din; text = null;
+			} else {
+				bis.reset();
+				bin = null; text = new BufferedReader(new InputStreamReader(bis, "UTF-8"));
+			}
+		}
+
+		/**
+		 * @return the next board, or null at the end of the file
+		 * @throws IOException If the file can not be read or has an invalid board
+		 */
+		public Board next() throws IOException {
+			return bin!=null ? nextBinary() : nextText();
+		}
+
+		private Board nextBinary() throws IOException {
+			int w = bin.read();
+			if (w<0) return null;
+			++line;
+			int h = bin.readUnsignedByte(), goal = bin.readUnsignedByte();
+			if (w*h>MAX_CELLS) throw new IOException("Invalid board "+line);
+			int[] cells = new int[w*h];
+			for(int i=0 ; i<cells.length ; ++i) cells[i] = bin.readUnsignedByte();
+			return create(w, h, goal, cells);
+		}
+
+		private Board nextText() throws IOException {
+			for(String s ; (s = text.readLine())!=null ; ) {
+				++line;
+				s = s.trim();
+				if (s.length()==0 || s.charAt(0)=='#') continue;
+				String[] f = s.split("\\s+");
+				try {
+					int w = width, h = height, goal = goalHole, first = 0;
+					if (w==0 || f.length!=w*h) {	// With dimensions
+						w = Integer.parseInt(f[0]); h = Integer.parseInt(f[1]); goal = Integer.parseInt(f[2]);
+						first = 3;
+					}
+					if (w<=0 || h<=0 || f.length-first!=w*h) throw new IOException("Invalid line "+line);
+					int[] cells = new int[w*h];
+					for(int i=0 ; i<cells.length ; ++i) cells[i] = Integer.parseInt(f[first+i]);
+					return create(w, h, goal, cells);
+				} catch (RuntimeException e) {	// NumberFormat or ArrayIndexOutOfBounds
+					throw new IOException("Invalid line "+line);
+				}
+			}
+			return null;
+		}
+
+		private Board create(int w, int h, int goal, int[] cells) throws IOException {
+			if (w<=0 || h<=0 || goal>=w*h || !Boards.isPermutation(cells, w*h)) throw new IOException("Invalid board in "+line);
+			Board b = Boards.create(w, h, goal);
+			b.setCells(cells);
+			return b;
+		}
+
+		public void close() throws IOException {
+			if (bin!=null) bin.close(); else text.close();
+		}
+	}
+
+	/**
+	 * Writes a board in the binary format (after the header written by writeHeader)
+	 */
+	public static void write(DataOutputStream out, Board b) throws IOException {
+		if (b.getSize()>MAX_CELLS) throw new IllegalArgumentException("Board too big");
+		out.writeByte(b.getWidth());
+		out.writeByte(b.getHeight());
+		out.writeByte(b.getGoalHole());
+		for(int c=0 ; c<b.getSize() ; ++c) out.writeByte(b.getTile(c));
+	}
+
+	public static void writeHeader(DataOutputStream out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+	}
+
+	/**
+	 * Result of one board
+	 */
+	static class Result {
+		final int length;		// -1 if not solved
+		final long nodes, millis;
+		final String moves;
+		Result(int length, long nodes, long millis, String moves) {
+			this.length = length; this.nodes = nodes; this.millis = millis; this.moves = moves;
+		}
+	}
+
+	private static final char[] LETTERS = { 'L', 'U', 'R', 'D' };	// Index is the ordinal of the direction
+
+	private final ExecutorService pool;
+	private final int threads, maxPending;
+	private final ThreadLocal<IdaStarSolver> solvers;
+	private long solved, failed, nodes;	// Statistics
+
+	/**
+	 * @param factory heuristic of the solvers
+	 * @param threads number of workers
+	 * @param maxPending maximum boards read and not written (at least threads)
+	 * @param nodeLimit maximum nodes of each solve (0 without limit)
+	 * @param timeLimit maximum milliseconds of each solve (0 without limit)
+	 */
+	public BatchSolver(final Heuristic.Factory factory, int threads, int maxPending, final long nodeLimit, final long timeLimit) {
+		if (threads<1 || maxPending<threads) throw new IllegalArgumentException("Invalid number of threads");
+		this.threads = threads;
+		this.maxPending = maxPending;
+		pool = Executors.newFixedThreadPool(threads);
+		solvers = new ThreadLocal<IdaStarSolver>() {
+			@Override
+			protected IdaStarSolver initialValue() {
+				IdaStarSolver s = new IdaStarSolver(factory);
+				s.setNodeLimit(nodeLimit>0 ? nodeLimit : Long.MAX_VALUE);
+				s.setTimeLimit(timeLimit);
+				return s;
+			}
+		};
+	}
+
+	public int getThreads()		{ return threads; }
+	/** @return boards solved */
+	public long getSolved()		{ return solved; }
+	/** @return boards not solved (limits reached or unsolvable) */
+	public long getFailed()		{ return failed; }
+	/** @return nodes expanded in all boards */
+	public long getNodes()		{ return nodes; }
+
+	// Solves a board in a worker
+	private Result solve(Board b) {
+		IdaStarSolver s = solvers.get();
+		long start = System.nanoTime();
+		Direction[] sol;
+		try {
+			sol = s.solve(b);
+		} catch (IllegalArgumentException e) {	// No solution
+			return new Result(-1, 0, 0, "unsolvable");
+		}
+		long millis = (System.nanoTime()-start)/1000000;
+		if (sol==null) return new Result(-1, s.getNodes(), millis, "-");
+		StringBuilder sb = new StringBuilder(sol.length);
+		for(Direction d : sol) sb.append(LETTERS[d.ordinal()]);
+		return new Result(sol.length, s.getNodes(), millis, sb.toString());
+	}
+
+	/**
+	 * Solves all boards of the reader and writes the results in order.
+	 * @return number of boards
+	 * @throws IOException If the file can not be read or has an invalid board
+	 */
+	public long run(Reader in, PrintStream out) throws IOException, InterruptedException {
+		ArrayDeque<Future<Result>> pending = new ArrayDeque<Future<Result>>();
+		long read = 0, written = 0;
+		try {
+			for(Board b ; (b = in.next())!=null ; ++read) {
+				while (pending.size()>=maxPending || !pending.isEmpty() && pending.peek().isDone())
+					print(out, written++, pending.poll());		// Waits the oldest if full
+				final Board board = b;
+				pending.add(pool.submit(new Callable<Result>() {
+					@Override
+					public Result call() { return solve(board); }
+				}));
+			}
+			while (!pending.isEmpty()) print(out, written++, pending.poll());
+		} finally {
+			for(Future<Result> f : pending) f.cancel(true);
+		}
+		out.flush();
+		return read;
+	}
+
+	private void print(PrintStream out, long index, Future<Result> f) throws InterruptedException {
+		Result r;
+		try {
+			r = f.get();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Solver failed", e.getCause());
+		}
+		if (r.length>=0) ++solved; else ++failed;
+		nodes += r.nodes;
+		out.printf("%d %d %d %d %s\n", index, r.length, r.nodes, r.millis, r.moves);
+	}
+
+	/**
+	 * Stops the workers
+	 */
+	public void shutdown() { pool.shutdownNow(); }
+
+	/**
+	 * Solves the boards of a file (or converts a text file to binary).</br>
+	 * Usage: BatchSolver [options] file</br>
+	 * Options: -threads n, -pending n, -nodes limit, -time millis, -pdb file,
+	 *          -board width height goalHole (of lines with only tiles), -binary output (converts)
+	 */
+	public static void main(String[] args) throws Exception {
+		int threads = Runtime.getRuntime().availableProcessors(), pending = 0;
+		long nodeLimit = 0, timeLimit = 0;
+		int width = 0, height = 0, goalHole = 0;
+		File pdb = null, binary = null, file = null;
+		try {
+			for(int i=0 ; i<args.length ; ++i) {
+				String a = args[i];
+				if (a.equals("-threads")) threads = Integer.parseInt(args[++i]);
+				else if (a.equals("-pending")) pending = Integer.parseInt(args[++i]);
+				else if (a.equals("-nodes")) nodeLimit = Long.parseLong(args[++i]);
+				else if (a.equals("-time")) timeLimit = Long.parseLong(args[++i]);
+				else if (a.equals("-pdb")) pdb = new File(args[++i]);
+				else if (a.equals("-binary")) binary = new File(args[++i]);
+				else if (a.equals("-board")) {
+					width = Integer.parseInt(args[++i]); height = Integer.parseInt(args[++i]); goalHole = Integer.parseInt(args[++i]);
+				} else if (file==null && !a.startsWith("-")) file = new File(a);
+				else throw new IllegalArgumentException(a);
+			}
+		} catch (RuntimeException e) { file = null; }
+		if (file==null) {
+			System.err.println("Usage: BatchSolver [options] file");
+			System.err.println("  -threads n                  number of workers (default: processors)");
+			System.err.println("  -pending n                  maximum boards in progress (default: 4 per worker)");
+			System.err.println("  -nodes limit, -time millis  limits of each board");
+			System.err.println("  -pdb file                   pattern databases (built by PatternDatabaseFile)");
+			System.err.println("  -board width height goal    dimensions of text lines with only tiles");
+			System.err.println("  -binary output              converts the file to binary, without solving");
+			System.exit(1);
+		}
+		Reader in = new Reader(new FileInputStream(file), width, height, goalHole);
+		try {
+			if (binary!=null) {
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(binary), 1<<16));
+				try {
+					writeHeader(out);
+					for(Board b ; (b = in.next())!=null ; ) write(out, b);
+				} finally {
+					out.close();
+				}
+				return;
+			}
+			Heuristic.Factory factory = pdb!=null
+					? PdbHeuristic.factory(PatternDatabaseFile.load(pdb), LinearConflictHeuristic.FACTORY)
+					: LinearConflictHeuristic.FACTORY;
+			BatchSolver solver = new BatchSolver(factory, threads, pending>0 ? pending : threads*4, nodeLimit, timeLimit);
+			long start = System.currentTimeMillis();
+			PrintStream out = new PrintStream(new BufferedOutputStream(System.out, 1<<16), false);
+			long n;
+			try {
+				n = solver.run(in, out);
+			} finally {
+				solver.shutdown();
+			}
+			long time = Math.max(System.currentTimeMillis()-start, 1);
+			System.err.printf("%d boards (%d solved, %d failed), %d nodes in %d ms with %d threads: %.1f boards/s\n",
+					n, solver.getSolved(), solver.getFailed(), solver.getNodes(), time, solver.getThreads(), n*1000.0/time);
+		} finally {
+			in.close();
+		}
+	}
+}
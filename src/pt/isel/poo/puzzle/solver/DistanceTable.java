@@ -0,0 +1,210 @@
+package pt.isel.poo.puzzle.solver;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import pt.isel.poo.puzzle.Direction;
+import pt.isel.poo.puzzle.model.Board;
+import pt.isel.poo.puzzle.model.MoveTable;
+import pt.isel.poo.puzzle.model.StateCodec;
+
+/**
+ * Exact distance to the goal of all positions of a small board (3x3 has 181440).</br>
+ * Built once by a breadth first search from the goal, indexed by the rank of the position.
+ * Each position has a byte with the distance (255 if unreachable), so the distance is one lookup.
+ * Adjacent positions differ by one move, so the next optimal move is to the neighbor
+ * with distance d-1, without any search. The file has a header followed by the table:
+ * <pre>
+ *   int MAGIC, int VERSION, int width, int height, int goalHole
+ *   byte[n!] table (distance of each rank)
+ * </pre>
+ * Built offline (see main) for tools and benchmarks: the APP board is too big for a table.
+ * The file is memory mapped. Uses auxiliary arrays of the instance, so it is not thread safe.
+ * @author Palex
+ */
+public class DistanceTable {
+
+	public static final int MAGIC = 0x50445354;	// "PDST"
+	public static final int VERSION = 2;
+	public static final int MAX_CELLS = 10;		// 10! positions in 3.6MB
+	private static final int UNKNOWN = 0xFF;
+
+	private final int width, height, goalHole;
+	private final ByteBuffer table;		// Distance of each rank
+	private final StateCodec codec;
+	private final MoveTable moves;
+	private final long goalRank;
+	private final int[] cells;			// Auxiliary array
+
+	private DistanceTable(int width, int height, int goalHole, ByteBuffer table) {
+		this.width = width; this.height = height; this.goalHole = goalHole;
+		this.table = table;
+		int n = width*height;
+		codec = new StateCodec(n);
+		moves = MoveTable.get(width, height);
+		cells = new int[n];
+		for(int c=0 ; c<n ; ++c) cells[c] = c;
+		goalRank = codec.rank(cells);
+	}
+
+	public int getWidth()		{ return width; }
+	public int getHeight()		{ return height; }
+	public int getGoalHole()	{ return goalHole; }
+
+	/**
+	 * @return true if the table of boards with those dimensions is small enough
+	 */
+	public static boolean supports(int width, int height) {
+		return width>0 && height>0 && width*height<=MAX_CELLS;
+	}
+
+	private static int tableBytes(int n) { return (int) StateCodec.factorial(n); }
+
+	private int get(long rank)			{ return table.get((int) rank) & 0xFF; }
+
+	private void set(long rank, int v)	{ table.put((int) rank, (byte) v); }
+
+	/**
+	 * Builds the table with a breadth first search from the goal
+	 */
+	public static DistanceTable build(int width, int height, int goalHole) {
+		if (!supports(width, height)) throw new IllegalArgumentException("Board too big");
+		int n = width*height;
+		if (goalHole<0 || goalHole>=n) throw new IllegalArgumentException("Invalid goal hole");
+		ByteBuffer table = ByteBuffer.allocate(tableBytes(n));
+		for(int i=0 ; i<table.capacity() ; ++i) table.put(i, (byte) 0xFF);
+		DistanceTable dt = new DistanceTable(width, height, goalHole, table);
+		int[] cells = dt.cells, queue = new int[(int) (StateCodec.factorial(n)/2+1)];
+		int head = 0, tail = 0;
+		dt.set(dt.goalRank, 0);
+		queue[tail++] = (int) dt.goalRank;
+		while (head<tail) {
+			int rank = queue[head++];
+			dt.codec.unrank(rank, cells);
+			int hole = 0;
+			while (cells[hole]!=goalHole) ++hole;
+			int next = dt.get(rank)+1;
+			for(int i=0, count=dt.moves.count(hole) ; i<count ; ++i) {
+				int c = dt.moves.target(hole, dt.moves.dir(hole, i));
+				cells[hole] = cells[c]; cells[c] = goalHole;
+				long r = dt.codec.rank(cells);
+				if (dt.get(r)==UNKNOWN) {
+					dt.set(r, next);
+					queue[tail++] = (int) r;
+				}
+				cells[c] = cells[hole]; cells[hole] = goalHole;
+			}
+		}
+		return dt;
+	}
+
+	/**
+	 * Writes the table to a file
+	 */
+	public void save(File file) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1<<16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(width);
+			out.writeInt(height);
+			out.writeInt(goalHole);
+			ByteBuffer t = table.duplicate();
+			t.clear();
+			byte[] buf = new byte[1<<16];
+			while (t.hasRemaining()) {
+				int len = Math.min(buf.length, t.remaining());
+				t.get(buf, 0, len);
+				out.write(buf, 0, len);
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Maps the table of a file in memory.
+	 * @throws IOException If the file can not be read or has an invalid format or version
+	 */
+	public static DistanceTable load(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel ch = raf.getChannel();
+			ByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+			if (map.getInt()!=MAGIC) throw new IOException("Not a distance table file");
+			if (map.getInt()!=VERSION) throw new IOException("Unsupported distance table version");
+			int width = map.getInt(), height = map.getInt(), goalHole = map.getInt();
+			if (!supports(width, height) || goalHole<0 || goalHole>=width*height) throw new IOException("Invalid header");
+			if (map.remaining()!=tableBytes(width*height)) throw new IOException("Invalid file size");
+			return new DistanceTable(width, height, goalHole, map.slice());
+		} finally {
+			raf.close();	// The mapping remains valid after close
+		}
+	}
+
+	/**
+	 * Moves the hole of cells one move closer to the goal.
+	 * @return the direction of the move, or -1 if the position is unknown or solved
+	 */
+	private int closer(long rank, int hole) {
+		int v = get(rank);
+		if (v==UNKNOWN || v==0) return -1;
+		int prev = v-1;
+		for(int i=0, count=moves.count(hole) ; i<count ; ++i) {
+			int d = moves.dir(hole, i), c = moves.target(hole, d);
+			cells[hole] = cells[c]; cells[c] = goalHole;
+			if (get(codec.rank(cells))==prev) return d;
+			cells[c] = cells[hole]; cells[hole] = goalHole;
+		}
+		throw new IllegalStateException("Corrupted distance table");
+	}
+
+	private void check(Board b) {
+		if (b.getWidth()!=width || b.getHeight()!=height || b.getGoalHole()!=goalHole)
+			throw new IllegalArgumentException("Board of other dimensions");
+	}
+
+	/**
+	 * @return the length of the optimal solution, or -1 if the board is unsolvable
+	 * @throws IllegalArgumentException If the board has other dimensions
+	 */
+	public int distance(Board b) {
+		check(b);
+		b.getCells(cells);
+		int d = get(codec.rank(cells));
+		return d==UNKNOWN ? -1 : d;
+	}
+
+	/**
+	 * Returns the first move of an optimal solution.
+	 * @return the direction to move the hole, or null if the board is solved or unsolvable
+	 * @throws IllegalArgumentException If the board has other dimensions
+	 */
+	public Direction nextHint(Board b) {
+		check(b);
+		b.getCells(cells);
+		int d = closer(codec.rank(cells), b.getHole());
+		return d<0 ? null : Direction.of(d);
+	}
+
+	/**
+	 * Offline build of a table file.</br>
+	 * Usage: DistanceTable width height goalHole file
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length!=4) {
+			System.err.println("Usage: DistanceTable width height goalHole file");
+			System.exit(1);
+		}
+		int w = Integer.parseInt(args[0]), h = Integer.parseInt(args[1]), goal = Integer.parseInt(args[2]);
+		long start = System.currentTimeMillis();
+		build(w, h, goal).save(new File(args[3]));
+		System.out.printf("Built %dx%d distance table in %d ms\n", w, h, System.currentTimeMillis()-start);
+	}
+}
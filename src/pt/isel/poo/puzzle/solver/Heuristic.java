@@ -0,0 +1,47 @@
+package pt.isel.poo.puzzle.solver;
+
+/**
+ * Estimate of the number of moves to solve a board, used to guide the search.</br>
+ * The estimate must never be greater than the real number of moves (admissible)
+ * and must be zero only if the board is solved.</br>
+ * An instance is bound to one board dimension and may keep internal state between calls,
+ * so each search thread must use its own instance (see <code>copy()</code>).
+ * @author Palex
+ */
+public interface Heuristic {
+	/**
+	 * Creates heuristics for a board dimension
+	 */
+	interface Factory {
+		/**
+		 * @param width number of columns
+		 * @param height number of lines
+		 * @param goalHole cell of the hole in the solved board
+		 * @return the heuristic for that boards
+		 */
+		Heuristic create(int width, int height, int goalHole);
+	}
+
+	/**
+	 * Computes the estimate for all board
+	 * @param cells the tile in each cell (home cell of the tile)
+	 * @return the estimate
+	 */
+	int evaluate(int[] cells);
+
+	/**
+	 * Updates the estimate after a move already made in cells.
+	 * Must be called after evaluate() for every move, including the moves to undo.
+	 * @param cells the tile in each cell, after the move
+	 * @param tile the tile moved
+	 * @param from the cell where the tile was
+	 * @param to the cell where the tile is
+	 * @return the new estimate
+	 */
+	int update(int[] cells, int tile, int from, int to);
+
+	/**
+	 * @return a new instance for the same dimension, to use in other thread
+	 */
+	Heuristic copy();
+}
@@ -0,0 +1,261 @@
+package pt.isel.poo.puzzle.solver;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import pt.isel.poo.puzzle.Direction;
+import pt.isel.poo.puzzle.model.Board;
+import pt.isel.poo.puzzle.model.MoveTable;
+
+/**
+ * Hints computed in a background thread, reusing the last solution.</br>
+ * Keeps the path of the last solution and the key of each position in the path.
+ * When the board is in the path (the player did the suggested moves, or went back)
+ * the hint is the next move of the path. Otherwise a short search tries to rejoin the path,
+ * and only when that fails the board is solved again (by the optimal solver, and by
+ * the reduction solver if the optimal exceeds its limits).</br>
+ * The requests are done in one worker thread, and a request cancels the previous ones.
+ * The worker also computes full solutions, to solve automatically without blocking the UI.
+ * @author Palex
+ */
+public class HintService {
+
+	public static final int REPAIR_DEPTH = 6;	// Maximum moves to rejoin the path
+
+	/**
+	 * Receives the hints, in the worker thread
+	 */
+	public interface Listener {
+		/**
+		 * @param b the board of the request
+		 * @param d the direction to move the hole, or null if solved
+		 */
+		void onHint(Board b, Direction d);
+	}
+
+	/**
+	 * Receives the full solutions, in the worker thread
+	 */
+	public interface SolutionListener {
+		/**
+		 * @param b the board of the request
+		 * @param moves the directions to move the hole (empty if solved), or null if not found
+		 */
+		void onSolution(Board b, Direction[] moves);
+	}
+
+	private final IdaStarSolver solver;		// Optimal solver (with limits)
+	private final ReductionSolver fallback;	// Solver when the optimal fails
+	private final ExecutorService worker;
+	private final AtomicInteger requests = new AtomicInteger();	// To cancel old requests
+
+	private int width, height, goalHole;
+	private MoveTable moves;
+	private long[] keys;		// Keys of each tile in each cell
+	private int[] cells;		// Auxiliary array
+	private int[] path = new int[64];	// Directions of the hole in the last solution
+	private long[] pathKeys = new long[65];	// Key of the position before each move (and the final)
+	private int length;			// Moves in path
+	private int[] index = new int[128];	// Open addressing of pathKeys: position in path + 1 (0 if empty)
+	private int[] repair = new int[REPAIR_DEPTH], bestRepair = new int[REPAIR_DEPTH];
+	private int best, bestDepth, bestJoin;	// Best cost, moves and position of the path to rejoin
+	private int hole;
+	private long advances, repairs, solves;	// Statistics
+
+	/**
+	 * @param solver the optimal solver (should have node or time limit)
+	 * @param fallback solver of boards where the optimal fails (or null)
+	 */
+	public HintService(IdaStarSolver solver, ReductionSolver fallback) {
+		this.solver = solver;
+		this.fallback = fallback;
+		worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "hints");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Requests a hint of a board. The board is copied, so it can change after the call.
+	 * The listener is not called if other request is done before the result.
+	 */
+	public void request(Board b, final Listener listener) {
+		final Board copy = b.copy();
+		final int id = requests.incrementAndGet();
+		worker.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (id!=requests.get()) return;	// Canceled
+				Direction d = hint(copy);
+				if (id==requests.get()) listener.onHint(copy, d);
+			}
+		});
+	}
+
+	/**
+	 * Requests a full solution of a board, by the reduction solver (with its time budget),
+	 * or by the optimal solver in boards with one line or column.
+	 * The board is copied, so it can change after the call. Canceled as the hints.
+	 * @param reducer used only in the worker thread after this call
+	 */
+	public void requestSolution(Board b, final ReductionSolver reducer, final SolutionListener listener) {
+		final Board copy = b.copy();
+		final int id = requests.incrementAndGet();
+		worker.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (id!=requests.get()) return;	// Canceled
+				Direction[] sol = solution(copy, reducer);
+				if (id==requests.get()) listener.onSolution(copy, sol);
+			}
+		});
+	}
+
+	// Solves the board by the reducer, or by the optimal solver if the reducer does not support it
+	private synchronized Direction[] solution(Board b, ReductionSolver reducer) {
+		if (reducer!=null && b.getWidth()>1 && b.getHeight()>1) return reducer.solve(b);
+		return solver.solve(b);
+	}
+
+	/**
+	 * Cancels the pending requests
+	 */
+	public void cancel() { requests.incrementAndGet(); }
+
+	/**
+	 * Stops the worker thread
+	 */
+	public void shutdown() {
+		cancel();
+		worker.shutdown();
+	}
+
+	/** @return hints of positions in the kept path */
+	public long getAdvances()	{ return advances; }
+	/** @return hints that rejoined the kept path */
+	public long getRepairs()	{ return repairs; }
+	/** @return hints that solved the board again */
+	public long getSolves()		{ return solves; }
+
+	/**
+	 * Computes a hint in the calling thread (not concurrently with the worker).
+	 * @return the direction to move the hole, or null if solved or not found
+	 */
+	public synchronized Direction hint(Board b) {
+		if (b.isSolved()) return null;
+		if (keys==null || b.getWidth()!=width || b.getHeight()!=height || b.getGoalHole()!=goalHole) {
+			width = b.getWidth(); height = b.getHeight(); goalHole = b.getGoalHole();
+			moves = MoveTable.get(width, height);
+			keys = TranspositionTable.cellKeys(width*height);
+			cells = new int[width*height];
+			length = -1;	// No path
+		}
+		b.getCells(cells);
+		hole = b.getHole();
+		long key = TranspositionTable.key(keys, cells);
+		int at = find(key);
+		if (at>=0) ++advances;
+		else if (repair(key)) { ++repairs; at = 0; }
+		else if (solve(b)) { ++solves; at = 0; }
+		else return null;
+		return at<length ? Direction.of(path[at]) : null;
+	}
+
+	// Last index in the path of the position with that key (-1 if not in path)
+	private int find(long key) {
+		if (length<0) return -1;
+		int mask = index.length-1, at = -1;
+		for(int i=mix(key) & mask ; index[i]!=0 ; i=(i+1) & mask)
+			if (pathKeys[index[i]-1]==key) at = Math.max(at, index[i]-1);
+		return at;
+	}
+
+	private static int mix(long k) {
+		k *= 0x9E3779B97F4A7C15L;
+		return (int) (k >>> 40);
+	}
+
+	/*
+	 * Searches the positions at most REPAIR_DEPTH moves away for one in the path.
+	 * Chooses the one with fewer moves to the end (the repair moves plus the rest of the path).
+	 */
+	private boolean repair(long key) {
+		if (length<0) return false;
+		best = Integer.MAX_VALUE;
+		search(key, 0, -1);
+		if (best==Integer.MAX_VALUE) return false;
+		int n = bestDepth + length - bestJoin;
+		int[] p = new int[Math.max(n, 64)];
+		System.arraycopy(bestRepair, 0, p, 0, bestDepth);
+		System.arraycopy(path, bestJoin, p, bestDepth, length-bestJoin);
+		setPath(p, n);
+		return true;
+	}
+
+	private void search(long key, int depth, int last) {
+		if (depth>0) {
+			int j = find(key);
+			if (j>=0) {
+				if (depth+length-j < best) {
+					best = depth+length-j; bestDepth = depth; bestJoin = j;
+					System.arraycopy(repair, 0, bestRepair, 0, depth);
+				}
+				return;
+			}
+		}
+		if (depth==REPAIR_DEPTH) return;
+		for(int i=0, n=moves.count(hole) ; i<n ; ++i) {
+			int d = moves.dir(hole, i);
+			if (last>=0 && d==MoveTable.inverse(last)) continue;
+			repair[depth] = d;
+			long k = move(key, d);
+			search(k, depth+1, d);
+			move(k, MoveTable.inverse(d));
+		}
+	}
+
+	// Moves the hole in cells and returns the new key
+	private long move(long key, int d) {
+		int from = moves.target(hole, d), to = hole, tile = cells[from];
+		int n = cells.length;
+		cells[to] = tile; cells[from] = goalHole; hole = from;
+		return key ^ keys[tile*n+from] ^ keys[tile*n+to] ^ keys[goalHole*n+to] ^ keys[goalHole*n+from];
+	}
+
+	// Solves the board and keeps the solution
+	private boolean solve(Board b) {
+		Direction[] sol = solver.solve(b);
+		if (sol==null) sol = solution(b, fallback);
+		if (sol==null) return false;
+		int[] p = new int[Math.max(sol.length, 64)];
+		for(int i=0 ; i<sol.length ; ++i) p[i] = sol[i].ordinal();
+		setPath(p, sol.length);
+		return true;
+	}
+
+	// Keeps the path from the position in cells, and the keys of the positions
+	private void setPath(int[] p, int n) {
+		path = p; length = n;
+		if (pathKeys.length<n+1) pathKeys = new long[p.length+1];
+		int size = Integer.highestOneBit(n+1)*4;
+		if (index.length!=size) index = new int[size];
+		else Arrays.fill(index, 0);
+		long key = TranspositionTable.key(keys, cells);
+		for(int i=0 ; ; ++i) {
+			pathKeys[i] = key;
+			int mask = index.length-1, s = mix(key) & mask;
+			while (index[s]!=0) s = (s+1) & mask;
+			index[s] = i+1;
+			if (i==n) break;
+			key = move(key, path[i]);
+		}
+		for(int i=n-1 ; i>=0 ; --i) move(0, MoveTable.inverse(path[i]));	// Back to the start
+	}
+}
@@ -0,0 +1,234 @@
+package pt.isel.poo.puzzle.solver;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import pt.isel.poo.puzzle.Direction;
+import pt.isel.poo.puzzle.model.BitBoard;
+import pt.isel.poo.puzzle.model.Board;
+import pt.isel.poo.puzzle.model.Boards;
+import pt.isel.poo.puzzle.model.MoveTable;
+
+/**
+ * Optimal solver using IDA* (iterative deepening A*).</br>
+ * Each iteration is a depth first search limited by a cost bound (moves done + estimate),
+ * and the next bound is the minimum cost that exceeded the current one.
+ * The search works in a copy of the board cells and updates the heuristic in each move,
+ * so no objects are created for each node.</br>
+ * The solution is the sequence of directions to move the hole.
+ * Optionally a transposition table prunes the states already reached by other paths.</br>
+ * With the Manhattan distance (ManhattanHeuristic.FACTORY) and boards of 16 cells or less,
+ * the search works in a BitBoard: each move is a XOR of the long, the distance is
+ * updated by the board and the long is the key of the transposition table.
+ * @author Palex
+ */
+public class IdaStarSolver {
+
+	static final int FOUND = -1, ABORTED = -2;
+	static final Direction[] DIRS = Direction.values();
+
+	private final Heuristic.Factory factory;	// To create the heuristic for each board dimension
+	private long nodeLimit = Long.MAX_VALUE;	// Maximum nodes to expand in one solve
+	private long timeLimit;						// Maximum nanoseconds of one solve (0 without limit)
+	private long deadline;						// Time (nanoTime) to stop the current solve
+	private TranspositionTable table;			// To prune duplicated states (or null)
+
+	private Heuristic heuristic;	// Heuristic for the current dimension
+	private int width, height, goalHole;
+	private MoveTable moves;		// Moves of the hole for the current dimension
+	private int[] cells;			// The tile in each cell
+	private int hole;				// Current cell of the hole
+	private long[] keys;			// Keys of each tile in each cell (with table)
+	private long key;				// Key of the current state (with table)
+	private BitBoard bits;			// Search state of small boards with Manhattan distance (or null)
+	int h;							// Current estimate 
+	int bound;						// Cost bound of current iteration
+	int[] path;						// Directions (ordinals) of the hole moves
+	long nodes;						// Nodes expanded in the last solve
+	AtomicBoolean stop;				// Shared flag to stop the search (in parallel search)
+
+	/**
+	 * Solver using Manhattan distance with linear conflicts
+	 */
+	public IdaStarSolver() { this(LinearConflictHeuristic.FACTORY); }
+
+	/**
+	 * Solver using other heuristic
+	 */
+	public IdaStarSolver(Heuristic.Factory factory) { this.factory = factory; }
+
+	/**
+	 * Limits the effort of each solve. 
+	 * @param limit maximum number of nodes to expand
+	 */
+	public void setNodeLimit(long limit) { nodeLimit = limit; }
+
+	/**
+	 * Limits the time of each solve. 
+	 * @param millis maximum milliseconds (0 without limit)
+	 */
+	public void setTimeLimit(long millis) { timeLimit = millis*1000000; }
+
+	/**
+	 * Uses a transposition table to prune states reached again with the same or more moves.
+	 * @param table the table, or null to not use
+	 */
+	public void setTranspositionTable(TranspositionTable table) { this.table = table; }
+
+	public TranspositionTable getTranspositionTable() { return table; }
+
+	/**
+	 * @return number of nodes expanded in the last solve
+	 */
+	public long getNodes() { return nodes; }
+
+	/**
+	 * Finds a shortest solution. The board is not changed.
+	 * @return the directions to move the hole (empty if solved), or null if the node or time limit was reached
+	 * @throws IllegalArgumentException If the board has no solution 
+	 */
+	public Direction[] solve(Board b) {
+		int len = search(b);
+		if (len<0) return null;
+		Direction[] res = new Direction[len];
+		for(int i=0 ; i<len ; ++i) res[i] = DIRS[path[i]];
+		return res;
+	}
+
+	/**
+	 * Returns the first move of a shortest solution.
+	 * @return the direction to move the hole, or null if the board is solved or the node limit was reached
+	 */
+	public Direction nextHint(Board b) {
+		int len = search(b);
+		return len>0 ? DIRS[path[0]] : null;
+	}
+
+	// Runs IDA* and returns the solution length in path, or ABORTED
+	private int search(Board b) {
+		if (!Boards.isSolvable(b)) throw new IllegalArgumentException("Unsolvable board");
+		prepare(b);
+		nodes = 0;
+		bound = h;
+		deadline = timeLimit>0 ? System.nanoTime()+timeLimit : 0;
+		if (table!=null) table.newSearch();
+		for(;;) {
+			if (path.length<bound+1) path = new int[bound*2+1];
+			if (table!=null && bound>h) table.nextIteration();
+			int t = search(0, -1);
+			if (t==FOUND) return bound;
+			if (t==ABORTED) return ABORTED;
+			bound = t;
+		}
+	}
+
+	// Copies the board to the search state
+	void prepare(Board b) {
+		if (heuristic==null || b.getWidth()!=width || b.getHeight()!=height || b.getGoalHole()!=goalHole) {
+			width = b.getWidth(); height = b.getHeight(); goalHole = b.getGoalHole();
+			heuristic = factory.create(width, height, goalHole);
+			moves = MoveTable.get(width, height);
+			keys = null;
+			cells = new int[width*height];
+			path = new int[64];
+			bits = factory==ManhattanHeuristic.FACTORY && cells.length<=BitBoard.MAX_CELLS 
+					? new BitBoard(width, height, goalHole) : null;
+		}
+		b.getCells(cells);
+		hole = b.getHole();
+		if (bits!=null) {
+			bits.setCells(cells);
+			h = bits.getManhattan();
+			key = bits.getBits();
+			return;
+		}
+		h = heuristic.evaluate(cells);
+		if (table!=null) {
+			if (keys==null) keys = TranspositionTable.cellKeys(cells.length);
+			key = TranspositionTable.key(keys, cells);
+		}
+	}
+
+	/**
+	 * Moves the hole, updating the estimate.
+	 * @param d ordinal of the direction
+	 * @return false if the hole is in the border
+	 */
+	boolean move(int d) {
+		if (bits!=null) {
+			if (!bits.moveHole(DIRS[d])) return false;
+			hole = bits.getHole(); h = bits.getManhattan(); key = bits.getBits();
+			return true;
+		}
+		int from = moves.target(hole, d), to = hole;
+		if (from<0) return false;
+		int tile = cells[from];
+		cells[to] = tile; cells[from] = goalHole; hole = from;
+		h = heuristic.update(cells, tile, from, to);
+		if (keys!=null) {
+			int n = cells.length;
+			key ^= keys[tile*n+from] ^ keys[tile*n+to] ^ keys[goalHole*n+to] ^ keys[goalHole*n+from];
+		}
+		return true;
+	}
+
+	/**
+	 * Depth first search limited by bound.
+	 * @param g moves done
+	 * @param last direction of last hole move (-1 in the root)
+	 * @return FOUND, ABORTED or the minimum cost that exceeded the bound
+	 */
+	int search(int g, int last) {
+		if (bits!=null) return searchBits(g, last);
+		int f = g + h;
+		if (f>bound) return f;
+		if (h==0) return FOUND;
+		if (++nodes>nodeLimit) return ABORTED;
+		if ((nodes & 0x3FF)==0 && (stop!=null && stop.get() || deadline!=0 && System.nanoTime()>deadline)) 
+			return ABORTED;
+		if (table!=null && table.visit(key, g)) return Integer.MAX_VALUE;	// Already searched
+		int min = Integer.MAX_VALUE;
+		int back = last>=0 ? MoveTable.inverse(last) : -1;
+		int cell = hole, n = moves.count(cell);
+		for(int i=0 ; i<n ; ++i) {
+			int d = moves.dir(cell, i);
+			if (d==back) continue;	// Does not undo the last move
+			move(d);
+			path[g] = d;
+			int t = search(g+1, d);
+			move(MoveTable.inverse(d));	// Undo move
+			if (t==FOUND || t==ABORTED) return t;
+			if (t<min) min = t;
+		}
+		return min;
+	}
+
+	/**
+	 * Depth first search in the BitBoard, the same of search() without the arrays.
+	 * The board is restored before returning (the fields h, hole and key are not changed).
+	 */
+	private int searchBits(int g, int last) {
+		BitBoard b = bits;
+		int h = b.getManhattan();
+		int f = g + h;
+		if (f>bound) return f;
+		if (h==0) return FOUND;
+		if (++nodes>nodeLimit) return ABORTED;
+		if ((nodes & 0x3FF)==0 && (stop!=null && stop.get() || deadline!=0 && System.nanoTime()>deadline)) 
+			return ABORTED;
+		if (table!=null && table.visit(b.getBits(), g)) return Integer.MAX_VALUE;	// Already searched
+		int min = Integer.MAX_VALUE;
+		int back = last>=0 ? MoveTable.inverse(last) : -1;
+		int cell = b.getHole(), n = moves.count(cell);
+		for(int i=0 ; i<n ; ++i) {
+			int d = moves.dir(cell, i);
+			if (d==back) continue;	// Does not undo the last move
+			b.moveHole(DIRS[d]);
+			path[g] = d;
+			int t = searchBits(g+1, d);
+			b.moveHole(DIRS[MoveTable.inverse(d)]);	// Undo move
+			if (t==FOUND || t==ABORTED) return t;
+			if (t<min) min = t;
+		}
+		return min;
+	}
+}
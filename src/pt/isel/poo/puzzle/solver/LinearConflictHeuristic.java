@@ -0,0 +1,105 @@
+package pt.isel.poo.puzzle.solver;
+
+/**
+ * Manhattan distance plus linear conflicts.</br>
+ * Two tiles are in linear conflict if both are in its home line (row or column)
+ * but in reverse order, so one of them must leave the line and return (two more moves).
+ * For each line, the number of tiles to leave is the number of tiles in home line
+ * minus the longest sequence already in order.</br>
+ * Each move only changes the distance of one tile and the conflicts of two lines, 
+ * so <code>update()</code> only recomputes these two lines.
+ * @author Palex
+ */
+public class LinearConflictHeuristic implements Heuristic {
+
+	/**
+	 * Factory of this heuristic
+	 */
+	public static final Factory FACTORY = new Factory() {
+		@Override
+		public Heuristic create(int width, int height, int goalHole) {
+			return new LinearConflictHeuristic(width, height, goalHole);
+		}
+	};
+
+	private final int width, height, goalHole;
+	private final int[] rowConflicts, colConflicts;	// Tiles to leave each line
+	private final int[] line, lis;					// Auxiliary arrays to compute conflicts
+	private int manhattan, conflicts;				// Current values
+
+	public LinearConflictHeuristic(int width, int height, int goalHole) {
+		this.width = width; this.height = height; this.goalHole = goalHole;
+		rowConflicts = new int[height];
+		colConflicts = new int[width];
+		int max = Math.max(width, height);
+		line = new int[max];
+		lis = new int[max];
+	}
+
+	@Override
+	public int evaluate(int[] cells) {
+		manhattan = conflicts = 0;
+		for(int c=0 ; c<width*height ; ++c)
+			if (cells[c]!=goalHole) manhattan += distance(cells[c],c);
+		for(int y=0 ; y<height ; ++y) conflicts += rowConflicts[y] = rowConflicts(cells,y);
+		for(int x=0 ; x<width ; ++x) conflicts += colConflicts[x] = colConflicts(cells,x);
+		return manhattan + 2*conflicts;
+	}
+
+	@Override
+	public int update(int[] cells, int tile, int from, int to) {
+		manhattan += distance(tile,to) - distance(tile,from);
+		int a = from/width, b = to/width;
+		if (a==b) { // Horizontal move: changes the conflicts of two columns 
+			a = from%width; b = to%width;
+			conflicts -= colConflicts[a] + colConflicts[b];
+			conflicts += (colConflicts[a] = colConflicts(cells,a)) + (colConflicts[b] = colConflicts(cells,b));
+		} else { // Vertical move: changes the conflicts of two rows
+			conflicts -= rowConflicts[a] + rowConflicts[b];
+			conflicts += (rowConflicts[a] = rowConflicts(cells,a)) + (rowConflicts[b] = rowConflicts(cells,b));
+		}
+		return manhattan + 2*conflicts;
+	}
+
+	@Override
+	public Heuristic copy() { return new LinearConflictHeuristic(width, height, goalHole); }
+
+	// Manhattan distance between the home cell of the tile and the cell
+	private int distance(int tile, int cell) {
+		return Math.abs(tile%width - cell%width) + Math.abs(tile/width - cell/width);
+	}
+
+	// Conflicts in the row y
+	private int rowConflicts(int[] cells, int y) {
+		int n = 0;
+		for(int c=y*width, end=c+width ; c<end ; ++c) {
+			int t = cells[c];
+			if (t!=goalHole && t/width==y) line[n++] = t%width;
+		}
+		return n - longestIncreasing(n);
+	}
+
+	// Conflicts in the column x
+	private int colConflicts(int[] cells, int x) {
+		int n = 0;
+		for(int c=x, end=width*height ; c<end ; c+=width) {
+			int t = cells[c];
+			if (t!=goalHole && t%width==x) line[n++] = t/width;
+		}
+		return n - longestIncreasing(n);
+	}
+
+	// Length of longest increasing subsequence of the first n values of line
+	private int longestIncreasing(int n) {
+		if (n<2) return n;
+		int best = 0;
+		for(int i=0 ; i<n ; ++i) {
+			int len = 1;
+			for(int j=0 ; j<i ; ++j)
+				if (line[j]<line[i] && lis[j]>=len) len = lis[j]+1;
+			lis[i] = len;
+			if (len>best) best = len;
+		}
+		return best;
+	}
+}
@@ -0,0 +1,50 @@
+package pt.isel.poo.puzzle.solver;
+
+/**
+ * Sum of the Manhattan distances of all tiles to their home cells.</br>
+ * Weaker than the linear conflicts, but each update is only the distance of the tile moved.
+ * With boards of 16 cells or less, IdaStarSolver does not call this heuristic:
+ * it searches in a BitBoard, that keeps the same distance updated in each move.
+ * @author Palex
+ * @see IdaStarSolver
+ */
+public class ManhattanHeuristic implements Heuristic {
+
+	/**
+	 * Factory of this heuristic
+	 */
+	public static final Factory FACTORY = new Factory() {
+		@Override
+		public Heuristic create(int width, int height, int goalHole) {
+			return new ManhattanHeuristic(width, height, goalHole);
+		}
+	};
+
+	private final int width, height, goalHole;
+	private int manhattan;		// Current value
+
+	public ManhattanHeuristic(int width, int height, int goalHole) {
+		this.width = width; this.height = height; this.goalHole = goalHole;
+	}
+
+	@Override
+	public int evaluate(int[] cells) {
+		manhattan = 0;
+		for(int c=0 ; c<width*height ; ++c)
+			if (cells[c]!=goalHole) manhattan += distance(cells[c],c);
+		return manhattan;
+	}
+
+	@Override
+	public int update(int[] cells, int tile, int from, int to) {
+		return manhattan += distance(tile,to) - distance(tile,from);
+	}
+
+	@Override
+	public Heuristic copy() { return new ManhattanHeuristic(width, height, goalHole); }
+
+	// Manhattan distance between the home cell of the tile and the cell
+	private int distance(int tile, int cell) {
+		return Math.abs(tile%width - cell%width) + Math.abs(tile/width - cell/width);
+	}
+}
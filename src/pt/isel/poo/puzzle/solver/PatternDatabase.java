@@ -0,0 +1,184 @@
+package pt.isel.poo.puzzle.solver;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import pt.isel.poo.puzzle.model.MoveTable;
+
+/**
+ * Pattern database of a group of tiles.</br>
+ * Stores, for each placement of the pattern tiles in the board, the minimum number of moves
+ * of pattern tiles needed to put them in the home cells (moves of other tiles are free).
+ * Because only the moves of its own tiles are counted, the values of databases with
+ * disjoint patterns can be added.</br>
+ * The placement (position of each pattern tile) is ranked as a k-permutation of the n cells,
+ * so the table has n!/(n-k)! bytes.
+ * @author Palex
+ * @see PdbHeuristic
+ */
+public class PatternDatabase {
+
+	private static final int UNKNOWN = 0xFF;	// Value not computed yet (in build)
+
+	private final int width, height, goalHole;
+	private final int[] tiles;		// Tiles of the pattern
+	private final ByteBuffer table;	// Distance for each placement rank
+
+	/**
+	 * @param tiles tiles of the pattern
+	 * @param table one byte for each placement (heap or memory mapped)
+	 */
+	public PatternDatabase(int width, int height, int goalHole, int[] tiles, ByteBuffer table) {
+		if (table.capacity()!=tableSize(width*height, tiles.length)) throw new IllegalArgumentException("Wrong table size");
+		this.width = width; this.height = height; this.goalHole = goalHole;
+		this.tiles = tiles.clone();
+		this.table = table;
+	}
+
+	public int getWidth()		{ return width; }
+	public int getHeight()		{ return height; }
+	public int getGoalHole()	{ return goalHole; }
+	public int[] getTiles()		{ return tiles.clone(); }
+	ByteBuffer getTable()		{ return table; }
+
+	/**
+	 * @param rank rank of the placement (see rank())
+	 * @return the minimum moves of pattern tiles from that placement
+	 */
+	public int distance(int rank) { return table.get(rank) & 0xFF; }
+
+	/**
+	 * @param n number of cells
+	 * @param k number of tiles in pattern
+	 * @return number of placements: n!/(n-k)!
+	 */
+	public static long tableSize(int n, int k) {
+		long size = 1;
+		for(int i=0 ; i<k ; ++i) size *= n-i;
+		return size;
+	}
+
+	/**
+	 * Rank of a placement. Each position is counted without the cells used by the previous tiles.
+	 * @param pos the cell of each pattern tile 
+	 * @param k number of pattern tiles
+	 * @param n number of cells
+	 */
+	static int rank(int[] pos, int k, int n) {
+		int rank = 0;
+		for(int i=0 ; i<k ; ++i) {
+			int p = pos[i], c = p;
+			for(int j=0 ; j<i ; ++j)
+				if (pos[j]<p) --c;
+			rank = rank*(n-i) + c;
+		}
+		return rank;
+	}
+
+	/**
+	 * Inverse of rank()
+	 * @param used auxiliary array with n elements
+	 */
+	static void unrank(int rank, int[] pos, int k, int n, boolean[] used) {
+		for(int i=k-1 ; i>=0 ; --i) {	// Extracts the digits
+			pos[i] = rank % (n-i);
+			rank /= n-i;
+		}
+		for(int i=0 ; i<n ; ++i) used[i] = false;
+		for(int i=0 ; i<k ; ++i) {		// Converts each digit in the free cell
+			int c = pos[i], p = 0;
+			for(;;++p)
+				if (!used[p] && c--==0) break;
+			used[p] = true;
+			pos[i] = p;
+		}
+	}
+
+	/**
+	 * Builds the database with a retrograde breadth first search from the solved board.</br>
+	 * Each state is the placement of pattern tiles plus the cell of the hole.
+	 * The hole moves freely between cells without pattern tiles, so each state
+	 * expands the region reachable by the hole (all with the same cost) and the
+	 * moves of pattern tiles adjacent to that region go to the next level.
+	 * @param tiles tiles of the pattern (the hole excluded)
+	 */
+	public static PatternDatabase build(int width, int height, int goalHole, int[] tiles) {
+		int n = width*height, k = tiles.length;
+		MoveTable moves = MoveTable.get(width, height);
+		long places = tableSize(n, k);
+		if (k==0 || places*n > Integer.MAX_VALUE) throw new IllegalArgumentException("Pattern too big");
+		byte[] table = new byte[(int) places];
+		Arrays.fill(table, (byte) UNKNOWN);
+		long[] closed = new long[(int)((places*n+63)/64)];	// States with final cost
+		long[] queued = new long[closed.length];			// States in next level
+		int[] pos = new int[k], occ = new int[n], stack = new int[n];
+		boolean[] used = new boolean[n];
+		int[] level = new int[1024], next = new int[1024];
+		int levelSize = 0, nextSize;
+		for(int i=0 ; i<k ; ++i) {
+			if (tiles[i]==goalHole || tiles[i]<0 || tiles[i]>=n) throw new IllegalArgumentException("Invalid tile");
+			pos[i] = tiles[i];
+		}
+		level[levelSize++] = rank(pos, k, n)*n + goalHole;
+		for(int cost=0 ; levelSize>0 ; ++cost) {
+			nextSize = 0;
+			for(int q=0 ; q<levelSize ; ++q) {
+				int state = level[q];
+				if (isSet(closed, state)) continue;
+				int place = state/n;
+				unrank(place, pos, k, n, used);
+				for(int i=0 ; i<n ; ++i) occ[i] = 0;
+				for(int i=0 ; i<k ; ++i) occ[pos[i]] = i+1;
+				if ((table[place]&0xFF)==UNKNOWN) table[place] = (byte) cost;
+				// Flood fill the hole region
+				int top = 0, base = place*n;
+				stack[top++] = state%n;
+				set(closed, state);
+				while (top>0) {
+					int hole = stack[--top];
+					for(int i=0, count=moves.count(hole) ; i<count ; ++i) {
+						int c = moves.target(hole, moves.dir(hole, i));
+						if (occ[c]==0) {	// Free move of the hole
+							if (!isSet(closed, base+c)) { set(closed, base+c); stack[top++] = c; }
+						} else {			// Move of a pattern tile to the hole
+							int t = occ[c]-1;
+							pos[t] = hole;
+							int s = rank(pos, k, n)*n + c;
+							pos[t] = c;
+							if (!isSet(closed, s) && !isSet(queued, s)) {
+								set(queued, s);
+								if (nextSize==next.length) next = Arrays.copyOf(next, nextSize*2);
+								next[nextSize++] = s;
+							}
+						}
+					}
+				}
+			}
+			int[] tmp = level; level = next; next = tmp;
+			levelSize = nextSize;
+		}
+		return new PatternDatabase(width, height, goalHole, tiles, ByteBuffer.wrap(table));
+	}
+
+	private static boolean isSet(long[] bits, int i) { return (bits[i>>>6] & (1L<<i)) != 0; }
+	private static void set(long[] bits, int i) { bits[i>>>6] |= 1L<<i; }
+
+	/**
+	 * Splits the tiles in groups for additive databases.
+	 * The tiles are grouped in reading order, with 6 tiles for each group 
+	 * in boards until 16 cells (6-6-3 for 4x4) and 5 tiles in bigger boards (5-5-5-5-4 for 5x5).
+	 */
+	public static int[][] defaultPartition(int width, int height, int goalHole) {
+		int n = width*height, group = n<=16 ? 6 : 5;
+		int groups = (n-1+group-1)/group;
+		int[][] res = new int[groups][];
+		for(int g=0, t=0 ; g<groups ; ++g) {
+			res[g] = new int[Math.min(group, n-1-g*group)];
+			for(int i=0 ; i<res[g].length ; ++i, ++t) {
+				if (t==goalHole) ++t;
+				res[g][i] = t;
+			}
+		}
+		return res;
+	}
+}
@@ -0,0 +1,127 @@
+package pt.isel.poo.puzzle.solver;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * File format of a set of pattern databases.</br>
+ * The file has a header followed by the tables (one byte for each placement):
+ * <pre>
+ *   int MAGIC, int VERSION, int width, int height, int goalHole, int count
+ *   count x ( int k, int[k] tiles )
+ *   count x ( byte[n!/(n-k)!] table )
+ * </pre>
+ * The file is loaded with memory mapped I/O, so the tables are not read 
+ * until used and the memory is shared with the file cache.
+ * @author Palex
+ */
+public final class PatternDatabaseFile {
+
+	public static final int MAGIC = 0x50504442; 	// "PPDB"
+	public static final int VERSION = 1;
+
+	private PatternDatabaseFile() { }
+
+	/**
+	 * Writes the databases to a file
+	 */
+	public static void save(File file, PatternDatabase[] dbs) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1<<16));
+		try {
+			PatternDatabase db = dbs[0];
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(db.getWidth());
+			out.writeInt(db.getHeight());
+			out.writeInt(db.getGoalHole());
+			out.writeInt(dbs.length);
+			for(PatternDatabase d : dbs) {
+				int[] tiles = d.getTiles();
+				out.writeInt(tiles.length);
+				for(int t : tiles) out.writeInt(t);
+			}
+			byte[] buf = new byte[1<<16];
+			for(PatternDatabase d : dbs) {
+				ByteBuffer table = d.getTable().duplicate();
+				table.clear();
+				while (table.hasRemaining()) {
+					int len = Math.min(buf.length, table.remaining());
+					table.get(buf, 0, len);
+					out.write(buf, 0, len);
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Maps the databases of a file in memory.
+	 * @throws IOException If the file can not be read or has an invalid format or version
+	 */
+	public static PatternDatabase[] load(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel ch = raf.getChannel();
+			MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+			if (map.getInt()!=MAGIC) throw new IOException("Not a pattern database file");
+			if (map.getInt()!=VERSION) throw new IOException("Unsupported pattern database version");
+			int width = map.getInt(), height = map.getInt(), goalHole = map.getInt();
+			int count = map.getInt(), n = width*height;
+			if (width<1 || height<1 || count<1 || count>=n) throw new IOException("Invalid header");
+			int[][] tiles = new int[count][];
+			for(int p=0 ; p<count ; ++p) {
+				int k = map.getInt();
+				if (k<1 || k>=n) throw new IOException("Invalid pattern");
+				tiles[p] = new int[k];
+				for(int i=0 ; i<k ; ++i) tiles[p][i] = map.getInt();
+			}
+			PatternDatabase[] dbs = new PatternDatabase[count];
+			for(int p=0 ; p<count ; ++p) {
+				long size = PatternDatabase.tableSize(n, tiles[p].length);
+				if (size>map.remaining()) throw new IOException("Truncated file");
+				map.limit(map.position()+(int) size);
+				dbs[p] = new PatternDatabase(width, height, goalHole, tiles[p], map.slice());
+				map.position(map.limit());
+				map.limit(map.capacity());
+			}
+			return dbs;
+		} finally {
+			raf.close();	// The mapping remains valid after close
+		}
+	}
+
+	/**
+	 * Builds the databases of the default partition
+	 * @see PatternDatabase#defaultPartition(int, int, int)
+	 */
+	public static PatternDatabase[] build(int width, int height, int goalHole) {
+		int[][] partition = PatternDatabase.defaultPartition(width, height, goalHole);
+		PatternDatabase[] dbs = new PatternDatabase[partition.length];
+		for(int p=0 ; p<partition.length ; ++p)
+			dbs[p] = PatternDatabase.build(width, height, goalHole, partition[p]);
+		return dbs;
+	}
+
+	/**
+	 * Offline build of a database file.</br>
+	 * Usage: PatternDatabaseFile width height goalHole file
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length!=4) {
+			System.err.println("Usage: PatternDatabaseFile width height goalHole file");
+			System.exit(1);
+		}
+		int w = Integer.parseInt(args[0]), h = Integer.parseInt(args[1]), goal = Integer.parseInt(args[2]);
+		long start = System.currentTimeMillis();
+		save(new File(args[3]), build(w, h, goal));
+		System.out.printf("Built %dx%d databases in %d ms\n", w, h, System.currentTimeMillis()-start);
+	}
+}
@@ -0,0 +1,100 @@
+package pt.isel.poo.puzzle.solver;
+
+import java.util.Arrays;
+
+/**
+ * Additive heuristic with disjoint pattern databases.</br>
+ * The estimate is the sum of the values of all databases. 
+ * A move only changes the placement of one pattern, so <code>update()</code> 
+ * only ranks that pattern again.
+ * @author Palex
+ * @see PatternDatabase
+ */
+public class PdbHeuristic implements Heuristic {
+
+	/**
+	 * Creates a factory of this heuristic for the dimension of the databases.
+	 * For other dimensions the factory uses the fallback factory.
+	 * @param dbs databases with disjoint patterns that include all tiles 
+	 * @param fallback factory to other dimensions
+	 */
+	public static Factory factory(final PatternDatabase[] dbs, final Factory fallback) {
+		final PdbHeuristic proto = new PdbHeuristic(dbs);
+		return new Factory() {
+			@Override
+			public Heuristic create(int width, int height, int goalHole) {
+				if (width==proto.width && height==proto.height && goalHole==proto.goalHole)
+					return proto.copy();
+				return fallback.create(width, height, goalHole);
+			}
+		};
+	}
+
+	private final PatternDatabase[] dbs;
+	private final int width, height, goalHole;
+	private final int[] patternOf;	// Pattern index of each tile
+	private final int[] indexOf;	// Index of each tile in its pattern
+	private final int[][] pos;		// Current cell of each tile of each pattern
+	private final int[] values;		// Current value of each database
+	private int sum;
+
+	/**
+	 * @param dbs databases with disjoint patterns that include all tiles 
+	 * @throws IllegalArgumentException If the databases are of different dimensions or not a partition of the tiles
+	 */
+	public PdbHeuristic(PatternDatabase[] dbs) {
+		this.dbs = dbs.clone();
+		width = dbs[0].getWidth(); height = dbs[0].getHeight(); goalHole = dbs[0].getGoalHole();
+		int n = width*height;
+		patternOf = new int[n];
+		indexOf = new int[n];
+		Arrays.fill(patternOf, -1);
+		pos = new int[dbs.length][];
+		values = new int[dbs.length];
+		int count = 0;
+		for(int p=0 ; p<dbs.length ; ++p) {
+			PatternDatabase db = dbs[p];
+			if (db.getWidth()!=width || db.getHeight()!=height || db.getGoalHole()!=goalHole)
+				throw new IllegalArgumentException("Different dimensions");
+			int[] tiles = db.getTiles();
+			for(int i=0 ; i<tiles.length ; ++i) {
+				if (patternOf[tiles[i]]!=-1) throw new IllegalArgumentException("Patterns not disjoint");
+				patternOf[tiles[i]] = p;
+				indexOf[tiles[i]] = i;
+			}
+			pos[p] = new int[tiles.length];
+			count += tiles.length;
+		}
+		if (count!=n-1) throw new IllegalArgumentException("Patterns do not include all tiles");
+	}
+
+	@Override
+	public int evaluate(int[] cells) {
+		for(int c=0 ; c<cells.length ; ++c) {
+			int t = cells[c];
+			if (t!=goalHole) pos[patternOf[t]][indexOf[t]] = c;
+		}
+		sum = 0;
+		for(int p=0 ; p<dbs.length ; ++p)
+			sum += values[p] = value(p);
+		return sum;
+	}
+
+	@Override
+	public int update(int[] cells, int tile, int from, int to) {
+		int p = patternOf[tile];
+		pos[p][indexOf[tile]] = to;
+		int v = value(p);
+		sum += v - values[p];
+		values[p] = v;
+		return sum;
+	}
+
+	@Override
+	public Heuristic copy() { return new PdbHeuristic(dbs); }
+
+	private int value(int p) {
+		int[] ps = pos[p];
+		return dbs[p].distance(PatternDatabase.rank(ps, ps.length, width*height));
+	}
+}
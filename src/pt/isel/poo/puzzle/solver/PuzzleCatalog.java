@@ -0,0 +1,241 @@
+package pt.isel.poo.puzzle.solver;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import pt.isel.poo.puzzle.model.Board;
+import pt.isel.poo.puzzle.model.Boards;
+import pt.isel.poo.puzzle.model.SplitRandom;
+
+/**
+ * Catalog of boards graded by the optimal solution length.</br>
+ * The file has a header followed by fixed size records sorted by length,
+ * so any board is read in O(1) without reading the others:
+ * <pre>
+ *   int MAGIC, int VERSION, int width, int height, int goalHole, int levels
+ *   int[levels] number of boards with each length (0..levels-1)
+ *   records: byte length, packed cells (4 bits each until 16 cells, 8 bits until 256, 16 bits beyond) 
+ * </pre>
+ * The file is memory mapped.
+ * @author Palex
+ * @see PuzzleGenerator
+ */
+public class PuzzleCatalog {
+
+	public static final int MAGIC = 0x50434154;	// "PCAT"
+	public static final int VERSION = 1;
+
+	private final int width, height, goalHole;
+	private final int[] counts;		// Boards of each length
+	private final int[] firsts;		// Index of the first board of each length
+	private final int total;		// Total boards
+	private final int recordSize;	
+	private final ByteBuffer records;
+	private final int[] cells;		// Auxiliary array to decode
+
+	private PuzzleCatalog(int width, int height, int goalHole, int[] counts, ByteBuffer records) {
+		this.width = width; this.height = height; this.goalHole = goalHole;
+		this.counts = counts;
+		firsts = new int[counts.length];
+		int sum = 0;
+		for(int l=0 ; l<counts.length ; ++l) { firsts[l] = sum; sum += counts[l]; }
+		total = sum;
+		recordSize = recordSize(width*height);
+		this.records = records;
+		cells = new int[width*height];
+	}
+
+	public int getWidth()		{ return width; }
+	public int getHeight()		{ return height; }
+	public int getGoalHole()	{ return goalHole; }
+	public int size()			{ return total; }
+	public int getMaxLength()	{ return counts.length-1; }
+
+	/**
+	 * @return number of boards with that optimal length
+	 */
+	public int count(int length) {
+		return length>=0 && length<counts.length ? counts[length] : 0;
+	}
+
+	/**
+	 * Puts the board in the position of a catalog entry
+	 * @param length the optimal length 
+	 * @param i index of board in that length (0..count(length)-1)
+	 */
+	public void get(int length, int i, Board b) {
+		if (i<0 || i>=count(length)) throw new IndexOutOfBoundsException();
+		decode(records, (firsts[length]+i)*recordSize+1, cells);
+		b.setCells(cells);
+	}
+
+	/**
+	 * Puts the board in a random position with optimal length in [minLength, maxLength].
+	 * @return the optimal length, or -1 if there are no boards in that interval
+	 */
+	public int random(Random rnd, int minLength, int maxLength, Board b) {
+		minLength = Math.max(minLength, 0);
+		maxLength = Math.min(maxLength, counts.length-1);
+		if (minLength>maxLength) return -1;
+		int from = firsts[minLength], to = firsts[maxLength]+counts[maxLength];
+		if (from==to) return -1;
+		int rec = (from + rnd.nextInt(to-from))*recordSize;
+		decode(records, rec+1, cells);
+		b.setCells(cells);
+		return records.get(rec) & 0xFF;
+	}
+
+	private static int recordSize(int n) {
+		return 1 + (n<=16 ? (n+1)/2 : n<=256 ? n : n*2);
+	}
+
+	private static void encode(int[] cells, byte[] dst, int off) {
+		int n = cells.length;
+		if (n<=16)
+			for(int i=0 ; i<n ; ++i)
+				dst[off+i/2] |= (i&1)==0 ? cells[i]<<4 : cells[i];
+		else if (n<=256)
+			for(int i=0 ; i<n ; ++i) dst[off+i] = (byte) cells[i];
+		else
+			for(int i=0 ; i<n ; ++i) { dst[off+2*i] = (byte) (cells[i]>>8); dst[off+2*i+1] = (byte) cells[i]; }
+	}
+
+	private static void decode(ByteBuffer src, int off, int[] cells) {
+		int n = cells.length;
+		if (n<=16)
+			for(int i=0 ; i<n ; ++i) {
+				int b = src.get(off+i/2) & 0xFF;
+				cells[i] = (i&1)==0 ? b>>4 : b&0xF;
+			}
+		else if (n<=256)
+			for(int i=0 ; i<n ; ++i) cells[i] = src.get(off+i) & 0xFF;
+		else
+			for(int i=0 ; i<n ; ++i) cells[i] = src.getShort(off+2*i) & 0xFFFF;
+	}
+
+	/**
+	 * Maps a catalog file in memory
+	 * @throws IOException If the file can not be read or has an invalid format or version
+	 */
+	public static PuzzleCatalog load(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel ch = raf.getChannel();
+			ByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+			if (map.getInt()!=MAGIC) throw new IOException("Not a puzzle catalog");
+			if (map.getInt()!=VERSION) throw new IOException("Unsupported catalog version");
+			int width = map.getInt(), height = map.getInt(), goalHole = map.getInt(), levels = map.getInt();
+			if (width<1 || height<1 || levels<1 || levels>256) throw new IOException("Invalid header");
+			int[] counts = new int[levels];
+			long total = 0;
+			for(int l=0 ; l<levels ; ++l) total += counts[l] = map.getInt();
+			if (total*recordSize(width*height) != map.remaining()) throw new IOException("Invalid size");
+			return new PuzzleCatalog(width, height, goalHole, counts, map.slice());
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Generates the boards in parallel and writes the catalog file.
+	 * @param minLength minimum optimal length
+	 * @param maxLength maximum optimal length (less than 256)
+	 * @param perLength number of boards of each length
+	 * @param threads number of worker threads
+	 * @param seed for the random generators. Each task of boards has a seed split from it
+	 *   in a fixed order, so the catalog is the same with any number of threads.
+	 */
+	public static void build(File file, final int width, final int height, final int goalHole,
+			int minLength, int maxLength, final int perLength, int threads, final long seed) throws IOException, InterruptedException {
+		if (minLength<0 || maxLength<minLength || maxLength>255) throw new IllegalArgumentException("Invalid lengths");
+		final int n = width*height, size = recordSize(n);
+		final int levels = maxLength+1, first = minLength;
+		final byte[] data = new byte[(levels-first)*perLength*size];
+		final int[] counts = new int[levels];
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		final ThreadLocal<PuzzleGenerator> generators = new ThreadLocal<PuzzleGenerator>() {
+			@Override
+			protected PuzzleGenerator initialValue() {
+				// Small boards are solved faster with the Manhattan distance in a BitBoard
+				IdaStarSolver solver = new IdaStarSolver(n<=9 ? ManhattanHeuristic.FACTORY : LinearConflictHeuristic.FACTORY);
+				solver.setNodeLimit(5000000);
+				return new PuzzleGenerator(solver, new SplitRandom());
+			}
+		};
+		final int chunk = 16;	// Boards in each task
+		SplitRandom seeds = new SplitRandom(seed);
+		for(int l=first ; l<levels ; ++l)
+			for(int i=0 ; i<perLength ; i+=chunk) {
+				final int length = l, start = i, end = Math.min(i+chunk, perLength);
+				final long taskSeed = seeds.nextLong();
+				pool.execute(new Runnable() {
+					@Override
+					public void run() {
+						PuzzleGenerator gen = generators.get();
+						gen.setSeed(taskSeed);
+						Board b = Boards.create(width, height, goalHole);
+						int[] cells = new int[n];
+						for(int k=start ; k<end ; ++k) {
+							if (!gen.generate(b, length, 1000)) continue; // Unreachable length
+							b.getCells(cells);
+							int off = ((length-first)*perLength + k)*size;
+							data[off] = (byte) length;
+							encode(cells, data, off+1);
+						}
+					}
+				});
+			}
+		pool.shutdown();
+		pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+		// Writes the records generated (data[off]==length), sorted by length
+		for(int l=first ; l<levels ; ++l)
+			for(int k=0 ; k<perLength ; ++k)
+				if (data[((l-first)*perLength + k)*size]==(byte) l) ++counts[l];
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1<<16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(width);
+			out.writeInt(height);
+			out.writeInt(goalHole);
+			out.writeInt(levels);
+			for(int l=0 ; l<levels ; ++l) out.writeInt(counts[l]);
+			for(int l=first ; l<levels ; ++l)
+				for(int k=0 ; k<perLength ; ++k) {
+					int off = ((l-first)*perLength + k)*size;
+					if (data[off]==(byte) l) out.write(data, off, size);
+				}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Offline build of a catalog file.</br>
+	 * Usage: PuzzleCatalog width height goalHole minLength maxLength perLength file [seed]
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length<7) {
+			System.err.println("Usage: PuzzleCatalog width height goalHole minLength maxLength perLength file [seed]");
+			System.exit(1);
+		}
+		int w = Integer.parseInt(args[0]), h = Integer.parseInt(args[1]), goal = Integer.parseInt(args[2]);
+		int min = Integer.parseInt(args[3]), max = Integer.parseInt(args[4]), per = Integer.parseInt(args[5]);
+		long seed = args.length>7 ? Long.parseLong(args[7]) : System.nanoTime();
+		int threads = Runtime.getRuntime().availableProcessors();
+		long start = System.currentTimeMillis();
+		build(new File(args[6]), w, h, goal, min, max, per, threads, seed);
+		PuzzleCatalog c = load(new File(args[6]));
+		System.out.printf("Built %d boards with %d threads in %d ms\n", c.size(), threads, System.currentTimeMillis()-start);
+	}
+}
@@ -0,0 +1,69 @@
+package pt.isel.poo.puzzle.solver;
+
+import java.util.Random;
+
+import pt.isel.poo.puzzle.Direction;
+import pt.isel.poo.puzzle.model.Board;
+import pt.isel.poo.puzzle.model.Shuffler;
+
+/**
+ * Generates boards with a given optimal solution length (the difficulty).</br>
+ * Makes a random walk from the solved board and verifies the optimal length with the solver.
+ * The walk length is adjusted after each try: longer when the board was easier 
+ * and shorter when it was harder. The walk keeps the parity of the requested length,
+ * because each move changes the parity of the solution length.
+ * @author Palex
+ */
+public class PuzzleGenerator {
+
+	private final IdaStarSolver solver;
+	private final Random rnd;
+	private final Shuffler shuffler;
+	private int[] walk = new int[64];
+	private int extra;		// Moves to walk beyond the requested length
+	private int tries;		// Boards solved in the last generate
+
+	/**
+	 * @param solver to verify the length (with node limit to skip hard boards)
+	 * @param rnd random generator
+	 */
+	public PuzzleGenerator(IdaStarSolver solver, Random rnd) {
+		this.solver = solver;
+		this.rnd = rnd;
+		shuffler = new Shuffler(rnd);
+	}
+
+	/**
+	 * Restarts the generator: the boards generated after depend only on the seed.
+	 */
+	public void setSeed(long seed) {
+		rnd.setSeed(seed);
+		extra = 0;
+	}
+
+	/**
+	 * @return number of boards solved in the last generate
+	 */
+	public int getTries() { return tries; }
+
+	/**
+	 * Puts the board in a position with that optimal solution length.
+	 * @param length the optimal number of moves
+	 * @param maxTries maximum number of boards to solve
+	 * @return false if no board found in maxTries
+	 */
+	public boolean generate(Board b, int length, int maxTries) {
+		for(tries=1 ; tries<=maxTries ; ++tries) {
+			b.reset();
+			int n = length + extra;
+			if (walk.length<n) walk = new int[n*2];
+			shuffler.walk(b, n, walk);
+			Direction[] sol = solver.solve(b);
+			if (sol==null) { if (extra>0) extra -= 2; continue; }	// Too hard
+			if (sol.length==length) return true;
+			if (sol.length<length) extra += 2;
+			else if (extra>0) extra -= 2;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,369 @@
+package pt.isel.poo.puzzle.solver;
+
+import java.util.Arrays;
+
+import pt.isel.poo.puzzle.Direction;
+import pt.isel.poo.puzzle.model.Board;
+import pt.isel.poo.puzzle.model.Boards;
+import pt.isel.poo.puzzle.model.MoveTable;
+
+/**
+ * Anytime solver for boards of any size (not optimal).</br>
+ * Reduces the board one line at a time: solves the row or column farthest from the goal hole,
+ * placing its tiles one by one, and continues in the remaining region until it is 2x2.
+ * The last two tiles of each line are solved together by a small search in a 2x3 window.
+ * The tiles and the hole are moved by breadth first searches that avoid the solved cells.</br>
+ * The moves are produced on demand (see next()), one tile at a time, so the first moves
+ * are ready in milliseconds and the memory is linear in the number of cells.
+ * Consecutive moves that cancel are removed before being returned.
+ * With a time budget, when the remaining region is small enough it is solved
+ * optimally by IDA*, if found within the budget.
+ * Not thread safe.
+ * @author Palex
+ */
+public class ReductionSolver {
+
+	public static final int SEARCH_CELLS = 16;	// Maximum cells of the region to solve by IDA*
+	private static final int MAX_WINDOW = 6;	// Cells of the windows solved by search
+
+	private final IdaStarSolver finisher;	// To solve the last region (with time budget)
+	private long budget;					// Milliseconds to spend in IDA* (0 to not use)
+	private long deadline;					// Time (nanoTime) to stop using IDA*
+
+	private int width, height, goalHole, size;
+	private MoveTable moves;
+	private int[] cells;		// The tile in each cell
+	private int[] pos;			// The cell of each tile
+	private boolean[] locked;	// Cells that can not be moved
+	private int hole;			// Cell of the hole
+
+	private int x0, y0, x1, y1;	// Unsolved region (inclusive)
+	private int[] line;			// Cells of the line being solved
+	private int lineLen, placed;// Cells of the line and cells already placed
+	private int inner;			// Offset from the line to the inside of the region
+	private boolean searched;	// IDA* was tried in this region
+	private boolean done;		// All moves were produced
+
+	private int[] queue;		// Moves ready to return (circular)
+	private int head, count;
+	private long emitted;		// Moves returned since start
+
+	// Auxiliary arrays of the searches
+	private int[] bfs, parent, mark, dist;
+	private int epoch;
+	private final int[] window = new int[MAX_WINDOW], winTiles = new int[3], winTargets = new int[3];
+	private final int[] winPrev = new int[256], winQueue = new int[256], winState = new int[3];
+	private final byte[] winMove = new byte[256];
+	private int[] subCells;		// Cells of the region to IDA*
+
+	/**
+	 * Solver without time budget
+	 */
+	public ReductionSolver() { this(new IdaStarSolver()); }
+
+	/**
+	 * @param finisher solver to use in the last region, when there is time budget
+	 */
+	public ReductionSolver(IdaStarSolver finisher) { this.finisher = finisher; }
+
+	/**
+	 * Time to improve the solution with IDA* in the last region of each solve.
+	 * @param millis milliseconds (0 to use only the constructive solution)
+	 */
+	public void setTimeBudget(long millis) { budget = millis; }
+
+	/**
+	 * @return number of moves returned since the last start
+	 */
+	public long getMoves() { return emitted; }
+
+	/**
+	 * Starts solving a board. The board is not changed.
+	 * @throws IllegalArgumentException If the board has no solution or has one line or column
+	 */
+	public void start(Board b) {
+		if (b.getWidth()<2 || b.getHeight()<2) throw new IllegalArgumentException("Board with one line");
+		if (!Boards.isSolvable(b)) throw new IllegalArgumentException("Unsolvable board");
+		if (cells==null || b.getWidth()!=width || b.getHeight()!=height) {
+			width = b.getWidth(); height = b.getHeight(); size = width*height;
+			moves = MoveTable.get(width, height);
+			cells = new int[size]; pos = new int[size]; locked = new boolean[size];
+			line = new int[Math.max(width, height)];
+			bfs = new int[size]; parent = new int[size]; mark = new int[size]; dist = new int[size];
+			queue = new int[64];
+		}
+		goalHole = b.getGoalHole();
+		b.getCells(cells);
+		for(int c=0 ; c<size ; ++c) { pos[cells[c]] = c; locked[c] = false; }
+		hole = pos[goalHole];
+		x0 = y0 = 0; x1 = width-1; y1 = height-1;
+		placed = lineLen = 0;
+		searched = done = false;
+		head = count = 0;
+		emitted = 0;
+		deadline = System.nanoTime() + budget*1000000;
+	}
+
+	/**
+	 * Returns the next move of the solution, computing moves of the next tile if needed.
+	 * @return the direction to move the hole, or null when solved
+	 */
+	public Direction next() {
+		while (count==0 && !done) step();
+		if (count==0) return null;
+		int d = queue[head];
+		head = (head+1) % queue.length;
+		--count;
+		++emitted;
+		return Direction.of(d);
+	}
+
+	/**
+	 * Solves the board at once
+	 * @return the directions to move the hole
+	 */
+	public Direction[] solve(Board b) {
+		start(b);
+		Direction[] res = new Direction[64];
+		int n = 0;
+		for(Direction d ; (d = next())!=null ; res[n++] = d)
+			if (n==res.length) res = Arrays.copyOf(res, n*2);
+		return Arrays.copyOf(res, n);
+	}
+
+	// Produces the moves to place the next tile (or the last tiles of a line or the region)
+	private void step() {
+		if (placed==lineLen && !nextLine()) { done = true; return; }
+		if (lineLen==0) return;		// Region solved by IDA*
+		if (placed < lineLen-2) {
+			int cell = line[placed++];
+			moveTile(cell, cell, 0);
+			locked[cell] = true;
+		} else {
+			lastTwo();
+			placed = lineLen;
+		}
+	}
+
+	// Selects the next line to solve, reducing the region. Returns false if solved.
+	private boolean nextLine() {
+		if (lineLen>0) {	// Removes the solved line from the region
+			if (inner==width) ++y0; else if (inner==-width) --y1;
+			else if (inner==1) ++x0; else --x1;
+			searched = false;
+		}
+		placed = lineLen = 0;
+		if (x1<x0) return false;	// Solved by IDA*
+		int w = x1-x0+1, h = y1-y0+1;
+		if (budget>0 && !searched && w*h<=SEARCH_CELLS && searchRegion()) return true;
+		if (w<=2 && h<=2) { lastRegion(); return false; }
+		int gx = goalHole%width, gy = goalHole/width;
+		if (h>2 && (h>=w || w<=2)) {	// Row farthest from the goal hole
+			boolean top = gy-y0 >= y1-gy;
+			int y = top ? y0 : y1;
+			for(int x=x0 ; x<=x1 ; ++x) line[lineLen++] = y*width+x;
+			inner = top ? width : -width;
+		} else {						// Column farthest from the goal hole
+			boolean left = gx-x0 >= x1-gx;
+			int x = left ? x0 : x1;
+			for(int y=y0 ; y<=y1 ; ++y) line[lineLen++] = y*width+x;
+			inner = left ? 1 : -1;
+		}
+		return true;
+	}
+
+	// Places the last two tiles of the line, with the hole and both tiles in the 2x3 window
+	private void lastTwo() {
+		int a = line[lineLen-2], b = line[lineLen-1];	// Tiles (and home cells)
+		if (pos[a]!=a || pos[b]!=b) {
+			window[0] = a; window[1] = b; window[2] = a+inner; window[3] = b+inner;
+			window[4] = a+2*inner; window[5] = b+2*inner;
+			moveTile(a, b, 0);					// a in the corner
+			locked[b] = true;
+			moveTile(b, b+2*inner, MAX_WINDOW);	// b in the window
+			locked[pos[b]] = true;
+			boolean inWindow = false;			// The hole in the window
+			for(int i=0 ; i<MAX_WINDOW && !inWindow ; ++i) inWindow = moveHole(window[i]);
+			if (!inWindow) throw new IllegalStateException("Hole can not reach the window");
+			locked[b] = locked[pos[b]] = false;
+			winTiles[0] = a; winTiles[1] = b;
+			solveWindow(6, 2);
+		}
+		locked[a] = locked[b] = true;
+	}
+
+	// Solves the last 2x2 region
+	private void lastRegion() {
+		int k = 0, m = 0;
+		for(int y=y0 ; y<=y1 ; ++y)
+			for(int x=x0 ; x<=x1 ; ++x) {
+				int c = y*width+x;
+				window[m++] = c;
+				if (c!=goalHole) winTiles[k++] = c;
+			}
+		solveWindow(m, k);
+	}
+
+	/*
+	 * Breadth first search of the moves of the hole inside the window
+	 * until the k tiles are in their home cells. The state is the window index
+	 * of the hole and of each tile, so there are at most 6^3 states.
+	 */
+	private void solveWindow(int m, int k) {
+		for(int i=0 ; i<k ; ++i) winTargets[i] = indexOf(winTiles[i], m);
+		int start = indexOf(hole, m);
+		for(int i=0 ; i<k ; ++i) start = start*m + indexOf(pos[winTiles[i]], m);
+		int states = m;
+		for(int i=0 ; i<k ; ++i) states *= m;
+		for(int s=0 ; s<states ; ++s) winPrev[s] = -1;
+		winPrev[start] = start;
+		int h = 0, t = 0, goal = -1;
+		winQueue[t++] = start;
+		while (h<t) {
+			int s = winQueue[h++];
+			if (isWindowGoal(s, m, k)) { goal = s; break; }
+			int wh = decode(s, m, k);
+			for(int d=0 ; d<MoveTable.DIRS ; ++d) {
+				int c = moves.target(window[wh], d);
+				if (c<0) continue;
+				int nh = indexOf(c, m);
+				if (nh<0) continue;
+				int ns = nh;
+				for(int i=0 ; i<k ; ++i) ns = ns*m + (winState[i]==nh ? wh : winState[i]);
+				if (winPrev[ns]>=0) continue;
+				winPrev[ns] = s; winMove[ns] = (byte) d;
+				winQueue[t++] = ns;
+			}
+		}
+		if (goal<0) throw new IllegalStateException("Unsolvable window");
+		int n = 0;		// Path from the goal to the start in winQueue
+		for(int s=goal ; s!=start ; s=winPrev[s]) winQueue[n++] = winMove[s];
+		while (n>0) moveHoleDir(winQueue[--n]);
+	}
+
+	private boolean isWindowGoal(int s, int m, int k) {
+		for(int i=k-1 ; i>=0 ; --i, s/=m)
+			if (s%m != winTargets[i]) return false;
+		return true;
+	}
+
+	// Stores in winState the window index of each tile of the state and returns the index of the hole
+	private int decode(int s, int m, int k) {
+		for(int i=k-1 ; i>=0 ; --i, s/=m) winState[i] = s%m;
+		return s;
+	}
+
+	private int indexOf(int cell, int m) {
+		for(int i=0 ; i<m ; ++i) if (window[i]==cell) return i;
+		return -1;
+	}
+
+	// Tries to solve the region by IDA* in the remaining time budget
+	private boolean searchRegion() {
+		searched = true;
+		long left = (deadline-System.nanoTime())/1000000;
+		if (left<=0) return false;
+		int w = x1-x0+1, h = y1-y0+1, n = w*h;
+		if (subCells==null || subCells.length!=n) subCells = new int[n];
+		for(int y=y0 ; y<=y1 ; ++y)
+			for(int x=x0 ; x<=x1 ; ++x) {
+				int t = cells[y*width+x];	// Tiles of the region have home in the region
+				subCells[(y-y0)*w + x-x0] = (t/width-y0)*w + t%width-x0;
+			}
+		Board sub = Boards.create(w, h, (goalHole/width-y0)*w + goalHole%width-x0);
+		sub.setCells(subCells);
+		finisher.setTimeLimit(left);
+		Direction[] sol = finisher.solve(sub);
+		finisher.setTimeLimit(0);
+		if (sol==null) return false;
+		for(Direction d : sol) moveHoleDir(d.ordinal());
+		x1 = x0-1;	// Empty region
+		return true;
+	}
+
+	/*
+	 * Moves the tile to the target cell, by a shortest path of the tile in the unlocked cells.
+	 * In each step the hole is moved to the next cell of the path without moving the tile.
+	 * Stops before if the tile is in one of the first m cells of the window.
+	 */
+	private void moveTile(int tile, int target, int m) {
+		if (pos[tile]==target) return;
+		// Distance of each unlocked cell to the target
+		for(int c=0 ; c<size ; ++c) dist[c] = -1;
+		int h = 0, t = 0;
+		dist[target] = 0; bfs[t++] = target;
+		while (h<t) {
+			int c = bfs[h++];
+			for(int i=0, n=moves.count(c) ; i<n ; ++i) {
+				int nc = moves.target(c, moves.dir(c, i));
+				if (locked[nc] || dist[nc]>=0) continue;
+				dist[nc] = dist[c]+1;
+				bfs[t++] = nc;
+			}
+		}
+		int p = pos[tile];
+		if (dist[p]<0) throw new IllegalStateException("Tile can not reach the target");
+		while (p!=target && indexOf(p, m)<0) {
+			locked[p] = true;
+			int next = -1;
+			for(int i=0, n=moves.count(p) ; i<n && next<0 ; ++i) {
+				int q = moves.target(p, moves.dir(p, i));
+				if (dist[q]==dist[p]-1 && moveHole(q)) next = q;
+			}
+			locked[p] = false;
+			if (next<0) throw new IllegalStateException("Hole can not reach the tile");
+			moveHoleTo(p);
+			p = next;
+		}
+	}
+
+	/*
+	 * Moves the hole to the target by a shortest path in the unlocked cells.
+	 * The search goes from the target, so the path is followed from the hole.
+	 * @return false if there is no path
+	 */
+	private boolean moveHole(int target) {
+		if (hole==target) return true;
+		if (locked[target]) return false;
+		if (++epoch==0) { for(int c=0 ; c<size ; ++c) mark[c] = 0; epoch = 1; }
+		int h = 0, t = 0;
+		mark[target] = epoch; bfs[t++] = target;
+		while (h<t && mark[hole]!=epoch) {
+			int c = bfs[h++];
+			for(int i=0, n=moves.count(c) ; i<n ; ++i) {
+				int nc = moves.target(c, moves.dir(c, i));
+				if (mark[nc]==epoch || locked[nc] && nc!=hole) continue;
+				mark[nc] = epoch; parent[nc] = c;
+				bfs[t++] = nc;
+			}
+		}
+		if (mark[hole]!=epoch) return false;
+		while (hole!=target) moveHoleTo(parent[hole]);
+		return true;
+	}
+
+	// Moves the hole to an adjacent cell
+	private void moveHoleTo(int cell) {
+		for(int d=0 ; d<MoveTable.DIRS ; ++d)
+			if (moves.target(hole, d)==cell) { moveHoleDir(d); return; }
+		throw new IllegalArgumentException("Not adjacent");
+	}
+
+	// Moves the hole and adds the move to the queue, removing the last if it is cancelled
+	private void moveHoleDir(int d) {
+		int c = moves.target(hole, d), tile = cells[c];
+		cells[hole] = tile; pos[tile] = hole;
+		cells[c] = goalHole; pos[goalHole] = c;
+		hole = c;
+		if (count>0) {
+			int last = (head+count-1) % queue.length;
+			if (queue[last]==MoveTable.inverse(d)) { --count; return; }
+		}
+		if (count==queue.length) {
+			int[] q = new int[queue.length*2];
+			for(int i=0 ; i<count ; ++i) q[i] = queue[(head+i) % queue.length];
+			queue = q; head = 0;
+		}
+		queue[(head+count++) % queue.length] = d;
+	}
+}
@@ -0,0 +1,143 @@
+package pt.isel.poo.puzzle.solver;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.Random;
+
+/**
+ * Transposition table of the states visited by a search, with a fixed memory budget.</br>
+ * Open addressing in a direct buffer (outside the java heap), without objects per entry.
+ * Each entry has two longs: the key of the board and the data (age of the iteration and depth).
+ * The entries are grouped in buckets of 4. When a bucket is full the victim is the entry
+ * of an older iteration, and then the deepest one, because entries near the root prune more.</br>
+ * The key of a board is the xor of cellKeys()[tile*size+cell] of all cells, so it is updated
+ * incrementally in each move. Not thread safe.
+ * @author Palex
+ */
+public class TranspositionTable {
+
+	public static final int ENTRY_BYTES = 16;	// Bytes of each entry (key and data)
+	private static final int BUCKET = 4;		// Entries in each bucket
+	private static final long DEPTH_MASK = 0xFFFF;
+
+	private final LongBuffer table;	// [2*i] key, [2*i+1] data of entry i (0 if empty)
+	private final int mask;			// Mask of the first entry of a bucket
+	private int age;				// Iteration of the current search
+	private int base;				// First iteration of the current search
+	private long hits, misses, evictions, prunes;
+
+	/**
+	 * @param budget maximum number of bytes to use (at least 64)
+	 */
+	public TranspositionTable(long budget) {
+		long entries = Long.highestOneBit(Math.max(budget / ENTRY_BYTES, BUCKET));
+		if (entries > 1<<26) entries = 1<<26;		// 1 GB
+		table = ByteBuffer.allocateDirect((int)entries*ENTRY_BYTES).order(ByteOrder.nativeOrder()).asLongBuffer();
+		mask = (int)entries - BUCKET;
+		age = base = 1;
+	}
+
+	/**
+	 * Key of each tile in each cell to compute board keys.
+	 * Up to 16 cells the keys are the tile in the nibble of the cell, so the board key is exact.
+	 * In bigger boards the keys are random (Zobrist hashing) and there may be collisions.
+	 * @return the key of tile t in cell c at [t*size+c]
+	 */
+	public static long[] cellKeys(int size) {
+		long[] keys = new long[size*size];
+		Random rnd = new Random(size);
+		for(int t=0 ; t<size ; ++t)
+			for(int c=0 ; c<size ; ++c)
+				keys[t*size+c] = size<=16 ? (long)t << 4*c : rnd.nextLong();
+		return keys;
+	}
+
+	/**
+	 * @return the key of the board with those cells
+	 */
+	public static long key(long[] keys, int[] cells) {
+		long k = 0;
+		for(int c=0 ; c<cells.length ; ++c) k ^= keys[cells[c]*cells.length+c];
+		return k;
+	}
+
+	/**
+	 * Starts a search from a new root. Entries of previous searches are ignored.
+	 */
+	public void newSearch() {
+		if (age >= Integer.MAX_VALUE-1) clear();
+		base = ++age;
+	}
+
+	/**
+	 * Starts a new iteration of the current search
+	 */
+	public void nextIteration() {
+		if (age >= Integer.MAX_VALUE-1) { clear(); base = age; }
+		else ++age;
+	}
+
+	/**
+	 * Removes all entries
+	 */
+	public void clear() {
+		for(int i=0, n=table.capacity() ; i<n ; ++i) table.put(i, 0);
+		age = base = 1;
+	}
+
+	/**
+	 * Visits a state at depth g of the current iteration and records it.
+	 * @return true if the state can be pruned: it was reached with fewer moves in this search,
+	 * or with the same moves in this iteration (so its subtree was already searched)
+	 */
+	public boolean visit(long key, int g) {
+		int first = (int)(mix(key) & mask), victim = first;
+		long victimOrder = Long.MAX_VALUE;
+		for(int i=first ; i<first+BUCKET ; ++i) {
+			long data = table.get(2*i+1);
+			int a = (int)(data >>> 16), depth = (int)(data & DEPTH_MASK);
+			if (data!=0 && table.get(2*i)==key) {
+				if (a<base) { victim = i; break; }	// Of a previous search
+				++hits;
+				if (depth<g || depth==g && a==age) { ++prunes; return true; }
+				table.put(2*i+1, data(g));
+				return false;
+			}
+			// Victim: empty, then older iteration, then deeper
+			long order = data==0 ? -1 : (long)(a<base ? 0 : a) << 16 | (DEPTH_MASK - depth);
+			if (order<victimOrder) { victim = i; victimOrder = order; }
+		}
+		++misses;
+		if (table.get(2*victim+1)!=0) ++evictions;
+		table.put(2*victim, key);
+		table.put(2*victim+1, data(g));
+		return false;
+	}
+
+	private long data(int g) { return (long)age << 16 | Math.min(g, DEPTH_MASK); }
+
+	// Spreads the key bits to the index bits
+	private static long mix(long k) {
+		k = (k ^ (k >>> 33)) * 0xFF51AFD7ED558CCDL;
+		return (k ^ (k >>> 33)) * BUCKET;
+	}
+
+	/** @return number of entries */
+	public int getCapacity()	{ return table.capacity()/2; }
+	/** @return visits that found the state */
+	public long getHits()		{ return hits; }
+	/** @return visits that did not find the state */
+	public long getMisses()		{ return misses; }
+	/** @return entries replaced by other states */
+	public long getEvictions()	{ return evictions; }
+	/** @return visits that pruned the state */
+	public long getPrunes()		{ return prunes; }
+
+	public void resetStats() { hits = misses = evictions = prunes = 0; }
+
+	@Override
+	public String toString() {
+		return "entries="+getCapacity()+" hits="+hits+" misses="+misses+" evictions="+evictions+" prunes="+prunes;
+	}
+}